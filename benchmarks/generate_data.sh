@@ -0,0 +1,22 @@
+#!/bin/bash
+
+# usage: ./generate_data.sh path [--rows=1000000] [--committees=2000] [--donors=250000] [--zipcodes=20000]
+#        [--committee-skew=1.1] [--donor-skew=0.8] [--first-year=2015] [--years=4] [--out-of-order=0.05]
+#        [--invalid=0.02] [--seed=1]
+
+BENCH_ROOT=$(dirname ${BASH_SOURCE})
+
+PROJECT_PATH=${BENCH_ROOT}/..
+GENERATOR_BIN=${BENCH_ROOT}/temp_generator_bin
+
+if [ -d ${GENERATOR_BIN} ]; then
+  rm -rf ${GENERATOR_BIN}
+fi
+mkdir -p ${GENERATOR_BIN}
+
+javac -d ${GENERATOR_BIN} ${PROJECT_PATH}/src/donationAnalytics/*.java ${BENCH_ROOT}/src/DataGenerator.java || exit 1
+java -cp ${GENERATOR_BIN} donationAnalytics.DataGenerator "$@"
+STATUS=$?
+
+rm -rf ${GENERATOR_BIN}
+exit ${STATUS}
@@ -0,0 +1,10 @@
+#!/bin/bash
+
+# usage: ./run_benchmarks.sh [JMH options], e.g. ./run_benchmarks.sh EngineBenchmark -p engine=kll -p rows=100000
+# every benchmark runs in its own fork with -Xmx6g for the 10^7 rows, -p rows=100000,1000000 skips them;
+# ./run_benchmarks.sh -h lists the JMH options
+
+BENCH_ROOT=$(dirname ${BASH_SOURCE})
+
+mvn -B -q -f ${BENCH_ROOT}/pom.xml package || exit 1
+java -jar ${BENCH_ROOT}/target/benchmarks.jar -prof gc "$@"
@@ -0,0 +1,66 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The whole analysis by {@link Main#performDonationAnalysis()}, from the input file written from the rows
+ * to the output file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class AnalysisBenchmark {
+
+    private static final int PERCENTILE = 30;
+
+    private File input, percentile, output;
+
+
+    /**
+     * Writes the rows and the percentile into the temporary input files.
+     *
+     * @param state synthetic rows
+     * @throws IOException if the files cannot be written
+     */
+    @Setup(Level.Trial)
+    public void writeInput(RowsState state) throws IOException {
+        input = File.createTempFile("itcont", ".txt");
+        percentile = File.createTempFile("percentile", ".txt");
+        output = File.createTempFile("repeat_donors", ".txt");
+        state.data.write(input);
+        Files.write(percentile.toPath(), Collections.singletonList(Integer.toString(PERCENTILE)));
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        input.delete();
+        percentile.delete();
+        output.delete();
+    }
+
+    /**
+     * Processes the input file.
+     *
+     * @return size of the output file
+     * @throws IOException if the analysis fails
+     */
+    @Benchmark
+    public long performDonationAnalysis() throws IOException {
+        new Main(input.getPath(), percentile.getPath(), output.getPath()).performDonationAnalysis();
+        return output.length();
+    }
+
+}
@@ -0,0 +1,350 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+
+/**
+ * Generator of synthetic donations in the format of the FEC {@code itcont.txt} files, for load testing.
+ * <p>
+ * The committees and the donors are drawn from Zipf distributions, so that a few committees receive most of
+ * the donations and a few donors donate many times, while most donors donate once or twice. Every donor has
+ * a fixed name and zip code, and the zip codes are shared by several donors. The donations advance in time
+ * through the configured range of years, but a fraction of them is dated to an earlier year, which makes
+ * some donors appear with an earlier year after a later one. Another fraction of the lines is invalid in one
+ * of the ways that the parser checks. The output depends only on the settings, including the seed.
+ * <p>
+ * Usage: {@code DataGenerator path [--name=value ...]}, where the optional settings are
+ * {@code rows}, {@code committees}, {@code donors}, {@code zipcodes}, {@code committee-skew}, {@code donor-skew},
+ * {@code first-year}, {@code years}, {@code out-of-order}, {@code invalid} and {@code seed},
+ * see {@link #set(String, String)}.
+ */
+public class DataGenerator {
+
+    /**
+     * Ways in which the generated line is invalid.
+     */
+    enum Invalid {
+        NONE, OTHER_ID, EMPTY_RECIPIENT, EMPTY_NAME, SHORT_ZIPCODE, MALFORMED_DATE, MALFORMED_AMOUNT
+    }
+
+    /**
+     * Generated donation.
+     */
+    static final class Row {
+        long index;
+        int committee;                  // 0-based, 0 is the most frequent
+        int donor;                      // 0-based, 0 is the most frequent
+        int date;                       // packed as yyyymmdd
+        int cents;
+        Invalid invalid;
+    }
+
+    private long rows = 1_000_000;
+    private int committees = 2_000;
+    private int donors = 250_000;
+    private int zipcodes = 20_000;
+    private double committeeSkew = 1.1;
+    private double donorSkew = 0.8;
+    private int firstYear = 2015;
+    private int years = 4;
+    private double outOfOrder = 0.05;
+    private double invalid = 0.02;
+    private long seed = 1;
+
+    private Random random;
+    private ZipfSampler committeeSampler, donorSampler;
+    private long generated;
+
+
+    /**
+     * Sets the value of the setting.
+     *
+     * @param name  {@code rows} - number of lines, {@code committees} - number of recipients,
+     *              {@code donors} - number of distinct donors, {@code zipcodes} - number of distinct zip codes,
+     *              {@code committee-skew} and {@code donor-skew} - exponents of the Zipf distributions,
+     *              0 for uniform, {@code first-year} and {@code years} - range of years,
+     *              {@code out-of-order} - fraction of donations dated to an earlier year,
+     *              {@code invalid} - fraction of invalid lines, {@code seed} - seed of the random generator
+     * @param value value of the setting
+     * @return this generator
+     * @throws IllegalArgumentException if the setting is unknown or the value is not valid
+     */
+    DataGenerator set(String name, String value) {
+        switch (name) {
+            case "rows":
+                rows = Long.parseLong(value);
+                break;
+            case "committees":
+                committees = Integer.parseInt(value);
+                break;
+            case "donors":
+                donors = Integer.parseInt(value);
+                break;
+            case "zipcodes":
+                zipcodes = Integer.parseInt(value);
+                break;
+            case "committee-skew":
+                committeeSkew = Double.parseDouble(value);
+                break;
+            case "donor-skew":
+                donorSkew = Double.parseDouble(value);
+                break;
+            case "first-year":
+                firstYear = Integer.parseInt(value);
+                break;
+            case "years":
+                years = Integer.parseInt(value);
+                break;
+            case "out-of-order":
+                outOfOrder = Double.parseDouble(value);
+                break;
+            case "invalid":
+                invalid = Double.parseDouble(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting: " + name);
+        }
+        if (rows < 0 || committees < 1 || donors < 1 || zipcodes < 1 || zipcodes > 100_000
+                || committeeSkew < 0 || donorSkew < 0 || firstYear < 1000 || years < 1 || firstYear + years > 10_000
+                || !(outOfOrder >= 0 && outOfOrder <= 1) || !(invalid >= 0 && invalid <= 1)) {
+            throw new IllegalArgumentException("setting is invalid: " + name + "=" + value);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of lines to generate.
+     *
+     * @return number of lines
+     */
+    long rows() {
+        return rows;
+    }
+
+    /**
+     * Generates the next donation, starting with the first one on the first call.
+     *
+     * @param row holder of the donation
+     * @return {@code false} if all donations are generated
+     */
+    boolean next(Row row) {
+        if (random == null) {
+            random = new Random(seed);
+            committeeSampler = new ZipfSampler(committees, committeeSkew);
+            donorSampler = new ZipfSampler(donors, donorSkew);
+        }
+        if (generated == rows) {
+            return false;
+        }
+
+        row.index = generated;
+        row.committee = committeeSampler.sample(random) - 1;
+        row.donor = donorSampler.sample(random) - 1;
+
+        // the donations advance through the years, some of them are dated to an earlier year
+        int year = firstYear + (int) (generated * years / Math.max(rows, 1));
+        if (year > firstYear && random.nextDouble() < outOfOrder) {
+            year = firstYear + random.nextInt(year - firstYear);
+        }
+        row.date = PackedDate.pack(year, 1 + random.nextInt(12), 1 + random.nextInt(28));
+
+        row.cents = random.nextInt(4) == 0 ? 1 + random.nextInt(500_000) : 100 * (1 + random.nextInt(2_700));
+        row.invalid = random.nextDouble() < invalid
+                ? Invalid.values()[1 + random.nextInt(Invalid.values().length - 1)] : Invalid.NONE;
+
+        generated++;
+        return true;
+    }
+
+    /**
+     * Returns the unique name of the donor made of capital letters, since the names with digits are invalid.
+     *
+     * @param donor index of the donor
+     * @return name
+     */
+    static String donorName(int donor) {
+        StringBuilder name = new StringBuilder("DONOR, ");
+        do {
+            name.append((char) ('A' + donor % 26));
+            donor /= 26;
+        } while (donor > 0);
+        return name.toString();
+    }
+
+    /**
+     * Returns the 9-digit zip code of the donor, whose first 5 digits are shared with other donors.
+     *
+     * @param donor index of the donor
+     * @return zip code
+     */
+    String zipcode(int donor) {
+        long h = mix(seed ^ donor);
+        int zipcode = (int) ((h >>> 32) % zipcodes) * (100_000 / zipcodes);
+        return String.format(Locale.ROOT, "%05d%04d", zipcode, (h & 0xFFFFFFFFL) % 10_000);
+    }
+
+    /**
+     * Formats the donation as an input line without the line terminator.
+     *
+     * @param row donation
+     * @return line
+     */
+    String line(Row row) {
+        int d = row.date;
+        String recipient = row.invalid == Invalid.EMPTY_RECIPIENT ? "" : String.format(Locale.ROOT, "C%08d", row.committee);
+        String name = row.invalid == Invalid.EMPTY_NAME ? "" : donorName(row.donor);
+        String zipcode = zipcode(row.donor);
+        if (row.invalid == Invalid.SHORT_ZIPCODE) {
+            zipcode = zipcode.substring(0, 3);
+        }
+        String date = String.format(Locale.ROOT, "%02d%02d%04d", d / 100 % 100, d % 100, d / 10000);
+        if (row.invalid == Invalid.MALFORMED_DATE) {
+            date = date.substring(0, 4) + "/" + date.substring(4);
+        }
+        String amount = row.cents % 100 == 0
+                ? Integer.toString(row.cents / 100) : String.format(Locale.ROOT, "%.2f", row.cents / 100.0);
+        if (row.invalid == Invalid.MALFORMED_AMOUNT) {
+            amount = "$" + amount;
+        }
+        String otherId = row.invalid == Invalid.OTHER_ID ? "H6CA34245" : "";
+
+        return recipient + "|N|M3|P|201702039042410894|15|IND|" + name + "|CITY|ST|" + zipcode
+                + "|EMPLOYER|OCCUPATION|" + date + "|" + amount + "|" + otherId
+                + "|SA11AI_" + row.index + "|1151015|||4" + row.index;
+    }
+
+    /**
+     * Writes all lines into the stream, starting again from the first donation.
+     *
+     * @param out output stream, not closed
+     * @throws IOException if the lines cannot be written
+     */
+    void generate(OutputStream out) throws IOException {
+        random = null;
+        generated = 0;
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 16);
+        Row row = new Row();
+        while (next(row)) {
+            writer.write(line(row));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns the well-mixed 64-bit hash (the finalizer of SplitMix64).
+     *
+     * @param x value
+     * @return hash
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Sampler of the Zipf distribution over 1..n with the given exponent in constant time and memory,
+     * using the rejection-inversion method (Hormann and Derflinger, "Rejection-inversion to generate variates
+     * from monotone discrete distributions", 1996).
+     */
+    static final class ZipfSampler {
+
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1, hIntegralN, s;
+
+
+        /**
+         * Initializes the sampler.
+         *
+         * @param n        number of elements
+         * @param exponent exponent, 0 for the uniform distribution
+         */
+        ZipfSampler(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        /**
+         * Returns the random element.
+         *
+         * @param random random generator
+         * @return element, 1 <= k <= n
+         */
+        int sample(Random random) {
+            if (exponent == 0) {
+                return 1 + random.nextInt(n);
+            }
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(n, x + 0.5));
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - exponent));
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log(1 + x) / x, precise near 0
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x, precise near 0
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+
+    }
+
+    /**
+     * {@code main} method that writes the generated lines into the file.
+     *
+     * @param args {@code path} - path to the output file, followed by the optional settings
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("expected path to the output file");
+        }
+
+        DataGenerator generator = new DataGenerator();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("option is invalid: " + args[i]);
+            }
+            generator.set(args[i].substring(2, separator), args[i].substring(separator + 1));
+        }
+
+        try (OutputStream out = new FileOutputStream(args[0])) {
+            generator.generate(out);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The lookups of the database on every row: the check of the repeat donor, and the bucket of
+ * (recipient, zip code, year) in {@link MapOfMaps} and in {@link BucketIndex}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class DatabaseBenchmark {
+
+    /**
+     * Checks the donor of every row in the empty database.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the results
+     */
+    @Benchmark
+    public void ifRepeatDonor(RowsState state, Blackhole sink) {
+        SyntheticRows data = state.data;
+        DonationsDatabase database = new DonationsDatabase();
+        for (int i = 0; i < state.rows; i++) {
+            sink.consume(database.ifRepeatDonor(data.donorKey(i), data.zipcodeKey(i), data.date(i)));
+        }
+    }
+
+    /**
+     * Finds or creates the bucket of every row in {@link MapOfMaps} keyed by Strings.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the buckets
+     */
+    @Benchmark
+    public void mapOfMapsGetPut(RowsState state, Blackhole sink) {
+        SyntheticRows data = state.data;
+        MapOfMaps<int[]> map = new MapOfMaps<>();
+        for (int i = 0; i < state.rows; i++) {
+            int[] bucket = map.get(data.recipient(i), data.zipcode(i), data.year(i));
+            if (bucket == null) {
+                map.put(data.recipient(i), data.zipcode(i), data.year(i), bucket = new int[1]);
+            }
+            bucket[0]++;
+            sink.consume(bucket);
+        }
+    }
+
+    /**
+     * Finds or creates the bucket of every row in {@link BucketIndex} keyed by the packed ints.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the buckets
+     */
+    @Benchmark
+    public void bucketIndexGetOrCreate(RowsState state, Blackhole sink) {
+        SyntheticRows data = state.data;
+        BucketIndex index = new BucketIndex(DoubleOrderedTree::new);
+        for (int i = 0; i < state.rows; i++) {
+            sink.consume(index.getOrCreate(data.recipientKey(i), data.zipcodeKey(i), PackedDate.year(data.date(i))));
+        }
+    }
+
+}
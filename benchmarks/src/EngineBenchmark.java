@@ -0,0 +1,79 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+
+/**
+ * The percentile engines on a single stream of all amounts, with the percentile after every insertion,
+ * so the bucket grows up to the number of rows. Every engine runs in its own fork, where the calls
+ * of {@link PercentileEngine} see that engine only, as they do in the analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class EngineBenchmark {
+
+    private static final int PERCENTILE = 30;
+
+    /**
+     * Engine under the benchmark.
+     */
+    @Param({"doubleOrderedTree", "bPlusTree", "histogram", "adaptiveTree", "twoHeap", "kll"})
+    public String engine;
+
+    private Supplier<PercentileEngine> engines;
+
+
+    /**
+     * Selects the factory of the engine.
+     */
+    @Setup(Level.Trial)
+    public void selectEngine() {
+        switch (engine) {
+            case "doubleOrderedTree":
+                engines = DoubleOrderedTree::new;
+                break;
+            case "bPlusTree":
+                engines = DoubleBPlusTree::new;
+                break;
+            case "histogram":
+                engines = AmountHistogram::new;
+                break;
+            case "adaptiveTree":
+                engines = AdaptiveOrderedTree::new;
+                break;
+            case "twoHeap":
+                engines = () -> new TwoHeapPercentile(PERCENTILE);
+                break;
+            case "kll":
+                engines = () -> new KllSketch(KllSketch.kForRankError(0.01));
+                break;
+            default:
+                throw new IllegalArgumentException("engine is unknown: " + engine);
+        }
+    }
+
+    /**
+     * Inserts all amounts into the new engine and reads the percentile after every insertion.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the percentiles
+     */
+    @Benchmark
+    public void putSelect(RowsState state, Blackhole sink) {
+        SyntheticRows data = state.data;
+        PercentileEngine amounts = engines.get();
+        for (int i = 0; i < state.rows; i++) {
+            amounts.put(data.amount(i));
+            sink.consume(amounts.percentile(PERCENTILE));
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Splitting of the input file written from the rows into lines: by {@link ByteLineReader} over
+ * {@link MappedInputStream}, which copies the mapping into the heap buffer, over {@link FileInputStream},
+ * and in place in the mapped windows, where only a line that spans two windows is copied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class InputBenchmark {
+
+    private static final long WINDOW_SIZE = 1L << 28;      // same as the default of MappedInputStream
+
+    private File input;
+
+
+    /**
+     * Writes the rows into the temporary input file.
+     *
+     * @param state synthetic rows
+     * @throws IOException if the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void writeInput(RowsState state) throws IOException {
+        input = File.createTempFile("itcont", ".txt");
+        state.data.write(input);
+    }
+
+    /**
+     * Deletes the temporary file.
+     */
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        input.delete();
+    }
+
+    /**
+     * Reads the lines from the mapped file copied into the buffer of the reader.
+     *
+     * @param sink consumer of the lines
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public void mappedCopy(Blackhole sink) throws IOException {
+        try (ByteLineReader reader = new ByteLineReader(new MappedInputStream(input.toPath()))) {
+            readLines(reader, sink);
+        }
+    }
+
+    /**
+     * Reads the lines from the file by system calls into the buffer of the reader.
+     *
+     * @param sink consumer of the lines
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public void streamCopy(Blackhole sink) throws IOException {
+        try (ByteLineReader reader = new ByteLineReader(new FileInputStream(input))) {
+            readLines(reader, sink);
+        }
+    }
+
+    /**
+     * Finds the lines directly in the mapped windows.
+     *
+     * @param sink consumer of the lines
+     * @throws IOException if the file cannot be mapped
+     */
+    @Benchmark
+    public void mappedInPlace(Blackhole sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            byte[] carry = new byte[1 << 10];       // start of the line that continues in the next window
+            int carried = 0;
+            for (long windowStart = 0; windowStart < size; windowStart += WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(WINDOW_SIZE, size - windowStart));
+                int limit = window.limit();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    byte b = window.get(i);
+                    if (b != '\n' && b != '\r') {
+                        continue;
+                    }
+                    if (carried > 0) {
+                        carry = append(carry, carried, window, 0, i);
+                        sink.consume(carry[0]);
+                        sink.consume(carried + i);
+                        carried = 0;
+                    } else if (i > lineStart) {
+                        sink.consume(window.get(lineStart));
+                        sink.consume(i - lineStart);
+                    }
+                    lineStart = i + 1;
+                }
+                carry = append(carry, carried, window, lineStart, limit);
+                carried += limit - lineStart;
+            }
+            if (carried > 0) {
+                sink.consume(carry[0]);
+                sink.consume(carried);
+            }
+        }
+    }
+
+    /**
+     * Consumes the lines of the reader the same way as {@link #mappedInPlace}.
+     *
+     * @param reader reader of the lines
+     * @param sink   consumer of the lines
+     * @throws IOException if the file cannot be read
+     */
+    private static void readLines(ByteLineReader reader, Blackhole sink) throws IOException {
+        while (reader.nextLine()) {
+            if (reader.lineEnd() > reader.lineStart()) {
+                sink.consume(reader.buffer()[reader.lineStart()]);
+                sink.consume(reader.lineEnd() - reader.lineStart());
+            }
+        }
+    }
+
+    /**
+     * Appends the bytes of the window to the carried bytes, growing the array if necessary.
+     *
+     * @param carry   carried bytes
+     * @param carried number of carried bytes
+     * @param window  window
+     * @param from    index of the first byte in the window
+     * @param to      index following the last byte in the window
+     * @return array of the carried bytes
+     */
+    private static byte[] append(byte[] carry, int carried, MappedByteBuffer window, int from, int to) {
+        if (carried + to - from > carry.length) {
+            byte[] larger = new byte[Math.max(carry.length * 2, carried + to - from)];
+            System.arraycopy(carry, 0, larger, 0, carried);
+            carry = larger;
+        }
+        for (int i = from; i < to; i++) {
+            carry[carried++] = window.get(i);
+        }
+        return carry;
+    }
+
+}
@@ -0,0 +1,79 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The order-statistic trees on a single bucket of all amounts, with the percentile after every insertion:
+ * {@link OrderedTree} over the array-based {@link RedBlackBST}, and the same keys in the original
+ * {@link RecursiveRedBlackBST}, for bucket sizes from 10^3 to 10^7.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class OrderedTreeBenchmark {
+
+    private static final int PERCENTILE = 30;
+
+    /**
+     * Number of amounts inserted into the bucket by one operation.
+     */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /**
+     * Tree under the benchmark.
+     */
+    @Param({"orderedTree", "recursive"})
+    public String tree;
+
+    /**
+     * Seed of the synthetic data.
+     */
+    @Param({"1"})
+    public long seed;
+
+    private double[] amounts;
+
+
+    /**
+     * Generates the amounts.
+     */
+    @Setup(Level.Trial)
+    public void generate() {
+        SyntheticRows data = new SyntheticRows(size, seed);
+        amounts = new double[size];
+        for (int i = 0; i < size; i++) {
+            amounts[i] = data.amount(i);
+        }
+    }
+
+    /**
+     * Inserts all amounts into the new tree and selects the percentile after every insertion.
+     *
+     * @param sink consumer of the percentiles
+     */
+    @Benchmark
+    public void putSelect(Blackhole sink) {
+        if (tree.equals("orderedTree")) {
+            OrderedTree<Double> ordered = new OrderedTree<>();
+            for (double amount : amounts) {
+                ordered.put(amount);
+                sink.consume(ordered.selectKMin(PercentileEngine.nearestRank(PERCENTILE, ordered.size()) - 1));
+            }
+        } else {
+            RecursiveRedBlackBST<Tuple<Double, Integer>, Integer> recursive = new RecursiveRedBlackBST<>();
+            for (double amount : amounts) {
+                recursive.put(new Tuple<>(amount, recursive.size()), 0);
+                sink.consume(recursive.select(PercentileEngine.nearestRank(PERCENTILE, recursive.size()) - 1).getKey1());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Parsing of the raw input lines by {@link DonationEntryParser}, with and without the metrics,
+ * and by the String-based {@link DonationEntry}, cycling through a pool of distinct lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ParserBenchmark {
+
+    private static final int LINE_POOL_SIZE = 1 << 16;     // the benchmarks cycle through this many distinct lines
+
+    private String[] lines;
+    private byte[] buffer;
+    private int[] starts;                                   // start of every line in the buffer, followed by the end
+
+
+    /**
+     * Formats the pool of lines, both as Strings and as bytes in one buffer.
+     *
+     * @param state synthetic rows
+     */
+    @Setup(Level.Trial)
+    public void formatLines(RowsState state) {
+        int pool = Math.min(state.rows, LINE_POOL_SIZE);
+        lines = new String[pool];
+        starts = new int[pool + 1];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < pool; i++) {
+            lines[i] = state.data.line(i);
+            byte[] line = lines[i].getBytes(StandardCharsets.US_ASCII);
+            bytes.write(line, 0, line.length);
+            starts[i + 1] = bytes.size();
+        }
+        buffer = bytes.toByteArray();
+    }
+
+    /**
+     * Parses the rows from bytes.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the entries
+     */
+    @Benchmark
+    public void parseBytes(RowsState state, Blackhole sink) {
+        DonationEntryParser parser = new DonationsDatabase().newParser();
+        for (int i = 0; i < state.rows; i++) {
+            int j = i % lines.length;
+            sink.consume(parser.parse(buffer, starts[j], starts[j + 1]));
+        }
+    }
+
+    /**
+     * Parses the rows from bytes and records the parser metrics.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the entries
+     */
+    @Benchmark
+    public void parseBytesMetrics(RowsState state, Blackhole sink) {
+        DonationsDatabase database = new DonationsDatabase();
+        DonationEntryParser parser = database.newParser(new ProcessingMetrics(database).newParserMetrics());
+        for (int i = 0; i < state.rows; i++) {
+            int j = i % lines.length;
+            sink.consume(parser.parse(buffer, starts[j], starts[j + 1]));
+        }
+    }
+
+    /**
+     * Parses the rows from Strings by splitting them into all fields.
+     *
+     * @param state synthetic rows
+     * @param sink  consumer of the entries
+     */
+    @Benchmark
+    public void parseLegacy(RowsState state, Blackhole sink) {
+        for (int i = 0; i < state.rows; i++) {
+            sink.consume(new DonationEntry(lines[i % lines.length]));
+        }
+    }
+
+}
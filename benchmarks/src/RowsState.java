@@ -0,0 +1,43 @@
+package donationAnalytics;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Synthetic rows from the {@link DataGenerator}, generated once per trial and shared by the benchmarks,
+ * see {@link SyntheticRows}. Every benchmark operation processes all rows once.
+ * <p>
+ * The 10^7 rows need the heap of {@code -Xmx6g}, which every benchmark fork is given;
+ * {@code -p rows=100000,1000000} skips them.
+ */
+@State(Scope.Benchmark)
+public class RowsState {
+
+    /**
+     * Number of rows processed by one operation.
+     */
+    @Param({"100000", "1000000", "10000000"})
+    public int rows;
+
+    /**
+     * Seed of the synthetic data.
+     */
+    @Param({"1"})
+    public long seed;
+
+    SyntheticRows data;
+
+
+    /**
+     * Generates the rows.
+     */
+    @Setup(Level.Trial)
+    public void generate() {
+        data = new SyntheticRows(rows, seed);
+    }
+
+}
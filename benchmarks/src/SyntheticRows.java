@@ -0,0 +1,146 @@
+package donationAnalytics;
+
+import java.io.*;
+
+
+/**
+ * Synthetic donations from the {@link DataGenerator}, kept in memory for the benchmarks.
+ * The rows are stored column-wise in primitive arrays that refer to the pools of committees, donors and years,
+ * so that millions of rows fit in memory, and each row can be formatted as a 21-field input line.
+ */
+class SyntheticRows {
+
+    private static final int FIRST_YEAR = 2015;
+    private static final int YEARS = 4;
+
+    private final DataGenerator generator;
+
+    private final String[] committees, donors, years;
+    private final String[] zipcodes;            // 5-digit zip codes of the donors
+    private final int[] zipcodeKeys;
+
+    private final int[] committee, donor;       // indices in the pools
+    private final int[] date;                   // packed as yyyymmdd
+    private final int[] cents;
+    private final byte[] invalid;               // ordinals of DataGenerator.Invalid
+
+
+    /**
+     * Generates the rows.
+     *
+     * @param rows number of rows
+     * @param seed seed of the random generator
+     */
+    SyntheticRows(int rows, long seed) {
+        int committeeCount = Math.max(10, rows / 1000);
+        int donorCount = Math.max(10, rows / 4);
+        generator = new DataGenerator()
+                .set("rows", Integer.toString(rows))
+                .set("committees", Integer.toString(committeeCount))
+                .set("donors", Integer.toString(donorCount))
+                .set("first-year", Integer.toString(FIRST_YEAR))
+                .set("years", Integer.toString(YEARS))
+                .set("seed", Long.toString(seed));
+
+        committees = new String[committeeCount];
+        for (int i = 0; i < committeeCount; i++) {
+            committees[i] = String.format("C%08d", i);
+        }
+        donors = new String[donorCount];
+        zipcodes = new String[donorCount];
+        zipcodeKeys = new int[donorCount];
+        for (int i = 0; i < donorCount; i++) {
+            donors[i] = DataGenerator.donorName(i);
+            zipcodes[i] = generator.zipcode(i).substring(0, DonationEntry.ZIPCODE_LENGTH).intern();
+            zipcodeKeys[i] = DonationEntry.zipcodeKey(zipcodes[i]);
+        }
+        years = new String[YEARS];
+        for (int i = 0; i < YEARS; i++) {
+            years[i] = Integer.toString(FIRST_YEAR + i);
+        }
+
+        committee = new int[rows];
+        donor = new int[rows];
+        date = new int[rows];
+        cents = new int[rows];
+        invalid = new byte[rows];
+        DataGenerator.Row row = new DataGenerator.Row();
+        for (int i = 0; generator.next(row); i++) {
+            committee[i] = row.committee;
+            donor[i] = row.donor;
+            date[i] = row.date;
+            cents[i] = row.cents;
+            invalid[i] = (byte) row.invalid.ordinal();
+        }
+    }
+
+    int size() {
+        return committee.length;
+    }
+
+    String recipient(int row) {
+        return committees[committee[row]];
+    }
+
+    int recipientKey(int row) {
+        return committee[row];
+    }
+
+    String donorName(int row) {
+        return donors[donor[row]];
+    }
+
+    int donorKey(int row) {
+        return donor[row];
+    }
+
+    String zipcode(int row) {
+        return zipcodes[donor[row]];
+    }
+
+    int zipcodeKey(int row) {
+        return zipcodeKeys[donor[row]];
+    }
+
+    String year(int row) {
+        return years[PackedDate.year(date[row]) - FIRST_YEAR];
+    }
+
+    int date(int row) {
+        return date[row];
+    }
+
+    double amount(int row) {
+        return cents[row] / 100.0;
+    }
+
+    /**
+     * Formats the row as an input line without the line terminator.
+     *
+     * @param i index of the row
+     * @return line
+     */
+    String line(int i) {
+        DataGenerator.Row row = new DataGenerator.Row();
+        row.index = i;
+        row.committee = committee[i];
+        row.donor = donor[i];
+        row.date = date[i];
+        row.cents = cents[i];
+        row.invalid = DataGenerator.Invalid.values()[invalid[i]];
+        return generator.line(row);
+    }
+
+    /**
+     * Writes all rows into the file.
+     *
+     * @param file file
+     * @throws IOException if the file cannot be written
+     */
+    void write(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            generator.generate(out);            // the generator produces the same rows again from the seed
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * Randomized check of {@link AmountHistogram} and {@link AdaptiveOrderedTree}, which starts with the histogram,
+ * against the exact percentiles of the sorted amounts. The amounts are drawn from a few round values,
+ * from a wide range, and from a mix of both, and after every insertion all percentiles are compared one by one,
+ * and the single descent of {@link PercentileEngine#percentiles(int[], double[])} is compared with them.
+ * The engines restored from their snapshots must give the same results.
+ */
+public class AmountHistogramCheck {
+
+    private static final int ROUNDS = 300;
+    private static final int MAX_AMOUNTS = 3000;
+    private static final long SEED = 20171124L;
+
+    private static final int[] ALL_PERCENTILES = new int[100];
+
+    static {
+        for (int p = 1; p <= 100; p++) {
+            ALL_PERCENTILES[p - 1] = p;
+        }
+    }
+
+
+    /**
+     * Returns the random amount from the distribution of the round: a few round amounts, a wide range, or both.
+     *
+     * @param random random numbers
+     * @param round  number of the round
+     * @return amount
+     */
+    private static double nextAmount(Random random, int round) {
+        switch (round % 3) {
+            case 0:
+                return 25 * (1 + random.nextInt(8));
+            case 1:
+                return random.nextInt(1_000_000) / 100.0;
+            default:
+                return random.nextInt(4) == 0 ? random.nextInt(100_000) / 100.0 : 50 * (1 + random.nextInt(4));
+        }
+    }
+
+    /**
+     * Returns {@code true} if the engine computes the same percentiles as the sorted amounts,
+     * both one by one and in one descent, for all percentiles and for a random subset of them.
+     *
+     * @param engine engine
+     * @param sorted amounts in ascending order
+     * @param random random numbers
+     * @return true or false
+     */
+    private static boolean agrees(PercentileEngine engine, double[] sorted, Random random) {
+        int n = sorted.length;
+        if (engine.size() != n) {
+            return false;
+        }
+
+        double[] values = new double[ALL_PERCENTILES.length];
+        engine.percentiles(ALL_PERCENTILES, values);
+        for (int p = 1; p <= 100; p++) {
+            double expected = sorted[PercentileEngine.nearestRank(p, n) - 1];
+            if (engine.percentile(p) != expected || values[p - 1] != expected) {
+                return false;
+            }
+        }
+
+        int[] subset = Arrays.stream(ALL_PERCENTILES).filter(p -> random.nextInt(10) == 0).toArray();
+        double[] subsetValues = new double[subset.length];
+        engine.percentiles(subset, subsetValues);
+        for (int i = 0; i < subset.length; i++) {
+            if (subsetValues[i] != engine.percentile(subset[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the copy of the engine restored from its snapshot.
+     *
+     * @param engine  engine
+     * @param restored new empty engine of the same kind
+     * @return restored engine
+     * @throws IOException if the snapshot cannot be written or read
+     */
+    private static PercentileEngine restore(PercentileEngine engine, PercentileEngine restored) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        engine.writeTo(new DataOutputStream(bytes));
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        return restored;
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests, not used
+     * @throws IOException if a snapshot cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(SEED);
+        int mismatches = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            AmountHistogram histogram = new AmountHistogram();
+            AdaptiveOrderedTree adaptive = new AdaptiveOrderedTree(1 + random.nextInt(2048));
+            int n = 1 + random.nextInt(MAX_AMOUNTS);
+            double[] amounts = new double[n];
+
+            for (int i = 0; i < n; i++) {
+                amounts[i] = nextAmount(random, round);
+                histogram.put(amounts[i]);
+                adaptive.put(amounts[i]);
+
+                if (random.nextInt(50) == 0 || i == n - 1) {
+                    double[] sorted = Arrays.copyOf(amounts, i + 1);
+                    Arrays.sort(sorted);
+                    if (!agrees(histogram, sorted, random) || !agrees(adaptive, sorted, random)) {
+                        System.out.println("mismatch in round " + round + " after " + (i + 1) + " amounts");
+                        mismatches++;
+                        break;
+                    }
+                }
+            }
+
+            double[] sorted = amounts.clone();
+            Arrays.sort(sorted);
+            if (!agrees(restore(histogram, new AmountHistogram()), sorted, random)
+                    || !agrees(restore(adaptive, new AdaptiveOrderedTree()), sorted, random)) {
+                System.out.println("mismatch after restoring round " + round);
+                mismatches++;
+            }
+        }
+
+        System.out.printf("%d rounds, %d mismatches%n", ROUNDS, mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+}
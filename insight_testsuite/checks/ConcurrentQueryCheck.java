@@ -0,0 +1,188 @@
+package donationAnalytics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * Concurrent check of {@link DonationsDatabase#queryStatistics(String, String, String, int)}: while one thread adds
+ * the donations, several threads query one bucket as it grows from {@link SortedArrayPercentile} into
+ * {@link AmountHistogram} and then into {@link DoubleBPlusTree}, with the engines of {@code --query-port}.
+ * The bucket first receives a few round amounts and then mostly new ones, which move it into the B+-tree,
+ * and the donations to the other zip codes keep inserting new buckets into the index in between.
+ * Every answer must be the same as the statistics of the same number of donations computed sequentially,
+ * and the queries must be answered both before and after the amounts are moved into the B+-tree.
+ */
+public class ConcurrentQueryCheck {
+
+    private static final int ROUNDS = 20;
+    private static final int READERS = 3;
+    private static final int DONATIONS = 6000;          // into the queried bucket
+    private static final int ROUND_AMOUNTS = 2000;      // the first donations of the bucket repeat a few round amounts
+    private static final int OTHER_BUCKETS = 4;         // donations to the other zip codes after each one
+    private static final int[] PERCENTILES = {1, 30, 50, 99, 100};
+    private static final long SEED = 20180214L;
+
+    private static final String RECIPIENT = "C00384516";
+    private static final String ZIPCODE = "02895";
+    private static final String YEAR = "2018";
+
+
+    /**
+     * Returns the input line of the donation.
+     *
+     * @param zipcode 5-digit zip code
+     * @param cents   amount in cents
+     * @return line
+     */
+    private static byte[] line(String zipcode, long cents) {
+        String amount = String.format(Locale.ROOT, "%d.%02d", cents / 100, cents % 100);
+        return (RECIPIENT + "|N|M2|P|201802149000000001|15|IND|DOE, JOHN|PAWTUCKET|RI|" + zipcode
+                + "|EMPLOYER|OCCUPATION|02142018|" + amount + "||SA11AI|1|||4021420181000000001")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the lines of the round: every donation to the queried bucket is followed by the donations
+     * to the other zip codes, which are new buckets for the most part.
+     *
+     * @param random random numbers
+     * @param round  number of the round
+     * @return lines in the input order
+     */
+    private static List<byte[]> lines(Random random, int round) {
+        List<byte[]> lines = new ArrayList<>();
+        for (int i = 0; i < DONATIONS; i++) {
+            long cents = i < ROUND_AMOUNTS ? 2500 * (1 + random.nextInt(8)) : 1 + random.nextInt(100_000_000);
+            lines.add(line(ZIPCODE, cents));
+            for (int j = 0; j < OTHER_BUCKETS; j++) {
+                lines.add(line(String.format(Locale.ROOT, "%05d", 10_000 + (round * DONATIONS + i) % 50_000 + j),
+                        100 * (1 + random.nextInt(100))));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Adds the donations of the lines into the database.
+     *
+     * @param database database
+     * @param lines    lines in the input order
+     */
+    private static void addAll(DonationsDatabase database, List<byte[]> lines) {
+        DonationEntryParser parser = database.newParser();
+        for (byte[] line : lines) {
+            DonationEntry entry = parser.parse(line, 0, line.length);
+            if (entry == null) {
+                throw new IllegalStateException("line is not valid: " + new String(line, StandardCharsets.US_ASCII));
+            }
+            database.addDonation(entry);
+        }
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests, not used
+     * @throws InterruptedException if the check is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Random random = new Random(SEED);
+        Supplier<PercentileEngine> engines = PercentileEngine.smallBucketFactory(SortedArrayPercentile.DEFAULT_THRESHOLD,
+                PercentileEngine.treeFactory(AdaptiveOrderedTree.DEFAULT_THRESHOLD));
+        AtomicInteger mismatches = new AtomicInteger();
+        AtomicInteger beforeMove = new AtomicInteger();
+        AtomicInteger afterMove = new AtomicInteger();
+        AtomicInteger overtaken = new AtomicInteger();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            List<byte[]> lines = lines(random, round);
+
+            // the statistics after every donation to the queried bucket, computed sequentially
+            List<AdaptiveOrderedTree> trees = new ArrayList<>();
+            DonationsDatabase sequential = new DonationsDatabase(PercentileEngine.smallBucketFactory(
+                    SortedArrayPercentile.DEFAULT_THRESHOLD, () -> {
+                        AdaptiveOrderedTree tree = new AdaptiveOrderedTree(AdaptiveOrderedTree.DEFAULT_THRESHOLD);
+                        trees.add(tree);
+                        return tree;
+                    }));
+            BucketStatistics[][] expected = new BucketStatistics[PERCENTILES.length][DONATIONS + 1];
+            int moved = DONATIONS + 1;      // number of donations that moves the bucket into the B+-tree
+            DonationEntryParser parser = sequential.newParser();
+            for (int i = 0; i < DONATIONS; i++) {
+                byte[] line = lines.get(i * (OTHER_BUCKETS + 1));
+                DonationBucket bucket = sequential.addDonation(parser.parse(line, 0, line.length));
+                for (int p = 0; p < PERCENTILES.length; p++) {
+                    expected[p][i + 1] = bucket.readStatistics(PERCENTILES[p]);
+                }
+                if (moved > DONATIONS && !trees.isEmpty() && trees.get(0).isLarge()) {
+                    moved = i + 1;
+                }
+            }
+            if (moved > DONATIONS) {
+                System.out.println("the bucket is not moved into the B+-tree in round " + round);
+                System.exit(1);
+            }
+
+            DonationsDatabase database = new DonationsDatabase(engines);
+            AtomicBoolean done = new AtomicBoolean();
+            int movedAt = moved;
+            int currentRound = round;
+            List<Thread> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                Random readerRandom = new Random(random.nextLong());
+                Thread reader = new Thread(() -> {
+                    int lastCount = 0;
+                    while (!done.get()) {
+                        int p = readerRandom.nextInt(PERCENTILES.length);
+                        BucketStatistics statistics;
+                        try {
+                            statistics = database.queryStatistics(RECIPIENT, ZIPCODE, YEAR, PERCENTILES[p]);
+                        } catch (ConcurrentModificationException e) {
+                            overtaken.incrementAndGet();
+                            continue;
+                        } catch (RuntimeException e) {
+                            if (mismatches.incrementAndGet() <= 10) {
+                                System.out.println("query failed in round " + currentRound + ": " + e);
+                            }
+                            continue;
+                        }
+                        if (statistics == null) {
+                            continue;
+                        }
+                        int n = statistics.getTransactionCount();
+                        BucketStatistics reference = n >= 1 && n <= DONATIONS ? expected[p][n] : null;
+                        if (n < lastCount || reference == null
+                                || statistics.getPercentile() != reference.getPercentile()
+                                || statistics.getCumulative() != reference.getCumulative()) {
+                            if (mismatches.incrementAndGet() <= 10) {
+                                System.out.println("mismatch in round " + currentRound + " after " + n + " donations: "
+                                        + statistics.getPercentile() + '|' + statistics.getCumulative() + '|' + n);
+                            }
+                        }
+                        lastCount = n;
+                        (n < movedAt ? beforeMove : afterMove).incrementAndGet();
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            addAll(database, lines);
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        System.out.printf("%d rounds, %d queries before and %d after the move into the B+-tree, %d overtaken, %d mismatches%n",
+                ROUNDS, beforeMove.get(), afterMove.get(), overtaken.get(), mismatches.get());
+        if (mismatches.get() > 0 || beforeMove.get() == 0 || afterMove.get() == 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+
+/**
+ * Differential check of {@link DonationEntryParser} against the String-based {@link DonationEntry#DonationEntry(String)}.
+ * Every line must be rejected by the same validation rule, and the valid entries must have the same fields.
+ * The lines are taken from the inputs of all tests and, in addition, crafted from a valid line by replacing
+ * its fields with edge cases: non-ASCII characters, signed zip codes, exponents and other number formats,
+ * and the dates around the Julian/Gregorian cutover of 1582. The lines are encoded in UTF-8 and decoded
+ * for the reference with the default charset, just as the input file is read by {@link java.io.FileReader}.
+ */
+public class DonationEntryParserCheck {
+
+    private static final int RANDOM_LINES = 200_000;
+    private static final long SEED = 20171205L;
+
+    private static final String TEMPLATE = "C00629618|N|TER|P|201701230300133512|15C|IND|PEREZ, JOHN A|LOS ANGELES|CA|"
+            + "90017|PRINCIPAL|DOUBLE NICKEL ADVISORS|01032017|40||SA01251735122|1141239|||2012520171368850783";
+
+    private static final String[] RECIPIENTS = {"C00629618", "C1", "", " ", "C\u00d80629618"};
+    private static final String[] NAMES = {"PEREZ, JOHN A", "P\u00c9REZ, JOHN", "PEREZ,JOHN", "", "O'BRIEN, PAT", "DE LA CRUZ, ANA"};
+    private static final String[] ZIPCODES = {"90017", "900171234", "9001", "+9001", "-9001", "+90017", "00000", "9O017",
+            "\u066900017", "900\uff1117", "+-901", "", " 9001", "90017 "};
+    private static final String[] AMOUNTS = {"40", "40.5", "40.55", "40.555", "2.495", "0", "0.00", ".5", "5.", "1e3",
+            "1E-2", "2.5e1", "-5", "+5", "-0", "NaN", "Infinity", "0x10", "1d", "1f", "", " 5", "12345678901234567",
+            "1234567890123.45", "0.000001", "0.0000005", "1.1234565", "123456789.123456", "1234567890.123456",
+            "\u0661\u0660", "4\u00b20", "9999999999999999999999",
+            "99999999999999999999", "999999999999.999999", "1000000000000", "1e300", "-Infinity"};
+    private static final String[] DATES = {"01032017", "02292016", "02292017", "02291500", "02291700", "02292000",
+            "10041582", "10051582", "10141582", "10151582", "12311581", "00012017", "13012017", "01322017", "04312017",
+            "0103201", "010320170", "+1032017", "01-32017", "0103+017", "0103-017", "01032\u066017", "01030000", ""};
+    private static final String[] OTHER_IDS = {"", "H6CA34245", " "};
+
+
+    /**
+     * Returns the first difference between the entries parsed from the line by both parsers.
+     *
+     * @param parser parser
+     * @param line   input line
+     * @return description of the difference, or {@code null} if the results are the same
+     */
+    private static String difference(DonationEntryParser parser, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        DonationEntry expected = new DonationEntry(new String(bytes, Charset.defaultCharset()));
+        DonationEntry actual = parser.parse(bytes, 0, bytes.length);
+
+        if (parser.getRejection() != expected.getRejection()) {
+            return "rejected by rule " + parser.getRejection() + ", expected " + expected.getRejection();
+        }
+        if (!expected.isValid()) {
+            return actual == null ? null : "accepted, expected rejection " + expected.getRejection();
+        }
+        if (actual == null) {
+            return "rejected, expected valid";
+        }
+        if (!actual.getRecipientID().equals(expected.getRecipientID())
+                || !actual.getDonorName().equals(expected.getDonorName())
+                || !actual.getZipcode().equals(expected.getZipcode())
+                || actual.getZipcodeKey() != expected.getZipcodeKey()
+                || !actual.getYear().equals(expected.getYear())
+                || actual.getYearKey() != expected.getYearKey()
+                || Double.compare(actual.getAmount(), expected.getAmount()) != 0
+                || actual.getMicros() != expected.getMicros()
+                || actual.getDate() != expected.getDate()) {
+            return "fields differ";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the line with the relevant fields replaced.
+     *
+     * @param fields fields of the template line, modified
+     * @param values values of the recipient, name, zip code, date, amount and other ID
+     * @return line
+     */
+    private static String line(String[] fields, String... values) {
+        fields[DonationEntry.FILER_ID_POSITION] = values[0];
+        fields[DonationEntry.DONOR_NAME_POSITION] = values[1];
+        fields[DonationEntry.ZIPCODE_POSITION] = values[2];
+        fields[DonationEntry.DATE_POSITION] = values[3];
+        fields[DonationEntry.AMOUNT_POSITION] = values[4];
+        fields[DonationEntry.OTHER_ID_POSITION] = values[5];
+        return String.join("|", fields);
+    }
+
+    /**
+     * Returns the crafted lines: every edge case of every field in the template line, the lines with the wrong
+     * number of fields, and random combinations of the edge cases.
+     *
+     * @return lines
+     */
+    private static List<String> craftedLines() {
+        String[] fields = TEMPLATE.split("\\|", -1);
+        String[][] cases = {RECIPIENTS, NAMES, ZIPCODES, DATES, AMOUNTS, OTHER_IDS};
+        String[] template = {RECIPIENTS[0], NAMES[0], ZIPCODES[0], DATES[0], AMOUNTS[0], OTHER_IDS[0]};
+
+        List<String> lines = new ArrayList<>();
+        for (int field = 0; field < cases.length; field++) {
+            for (String value : cases[field]) {
+                String[] values = template.clone();
+                values[field] = value;
+                lines.add(line(fields, values));
+            }
+        }
+        lines.add(TEMPLATE.substring(0, TEMPLATE.lastIndexOf('|')));
+        lines.add(TEMPLATE + "|");
+        lines.add("");
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < RANDOM_LINES; i++) {
+            String[] values = new String[cases.length];
+            for (int field = 0; field < cases.length; field++) {
+                String[] edgeCases = cases[field];
+                values[field] = random.nextInt(3) == 0 ? edgeCases[random.nextInt(edgeCases.length)] : template[field];
+            }
+            lines.add(line(fields, values));
+        }
+        return lines;
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests
+     * @throws IOException if input cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        File[] tests = new File(args[0]).listFiles();
+        if (tests == null) {
+            throw new FileNotFoundException(args[0]);
+        }
+        Arrays.sort(tests);
+
+        List<String> lines = new ArrayList<>();
+        for (File test : tests) {
+            lines.addAll(Files.readAllLines(new File(test, "input/itcont.txt").toPath(), Charset.defaultCharset()));
+        }
+        int testLines = lines.size();
+        lines.addAll(craftedLines());
+
+        DonationEntryParser parser = new DonationsDatabase().newParser();
+        long[] rules = new long[DonationEntry.NUMBER_OF_RULES];
+        int mismatches = 0;
+
+        for (String line : lines) {
+            String difference = difference(parser, line);
+            rules[parser.getRejection()]++;
+            if (difference != null && mismatches++ < 20) {
+                System.out.println(difference + ": " + line);
+            }
+        }
+
+        System.out.printf("%d test lines, %d crafted lines, lines by rule %s, %d mismatches%n",
+                testLines, lines.size() - testLines, Arrays.toString(rules), mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/**
+ * Differential check of {@link DonorNameValidator} against the original regex-based implementation.
+ * The names are taken from the inputs of all tests and, in addition, generated randomly.
+ */
+public class DonorNameValidatorCheck {
+
+    private static final int RANDOM_NAMES = 1_000_000;
+    private static final long SEED = 20171101L;
+
+    // characters that are likely to break the name
+    private static final String ALPHABET = "aZ ,,  .-'1\t";
+
+
+    /**
+     * Original implementation of {@code DonationEntry.checkIfValidDonorName}.
+     *
+     * @param name string with last name and first name separated by ", "
+     * @return true or false
+     */
+    private static boolean referenceIsValid(String name) {
+        String[] names = name.split(", ", -1);
+        if (names.length != 2) {
+            return false;
+        }
+
+        for (String n : names) {
+            for (String w : n.split(" ", -1)) {
+                if ("".equals(w) || !w.matches("[a-zA-Z]+")) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if both representations of the name are validated the same way as by the reference.
+     *
+     * @param name donor name
+     * @return true or false
+     */
+    private static boolean agrees(String name) {
+        boolean expected = referenceIsValid(name);
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        if (DonorNameValidator.isValid(name) != expected || DonorNameValidator.isValid(bytes, 0, bytes.length) != expected) {
+            System.out.println("mismatch for \"" + name + "\", expected " + expected);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads donor names from the input files of all tests.
+     *
+     * @param testsDir folder with the tests
+     * @return list of names
+     * @throws IOException if input cannot be read
+     */
+    private static List<String> readNames(File testsDir) throws IOException {
+        List<String> names = new ArrayList<>();
+        File[] tests = testsDir.listFiles();
+        if (tests == null) {
+            throw new FileNotFoundException(testsDir.getPath());
+        }
+
+        for (File test : tests) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(new File(test, "input/itcont.txt")))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\\|", -1);
+                    if (fields.length > DonationEntry.DONOR_NAME_POSITION) {
+                        names.add(fields[DonationEntry.DONOR_NAME_POSITION]);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Generates random name, either a mutation of an existing name or a random sequence of likely characters.
+     *
+     * @param random source of randomness
+     * @param names  existing names
+     * @return name
+     */
+    private static String randomName(Random random, List<String> names) {
+        StringBuilder name = new StringBuilder();
+
+        if (random.nextBoolean() && !names.isEmpty()) {
+            name.append(names.get(random.nextInt(names.size())));
+            int mutations = 1 + random.nextInt(3);
+            for (int i = 0; i < mutations && name.length() > 0; i++) {
+                int position = random.nextInt(name.length());
+                char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        name.setCharAt(position, c);
+                        break;
+                    case 1:
+                        name.insert(position, c);
+                        break;
+                    default:
+                        name.deleteCharAt(position);
+                }
+            }
+        } else {
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                name.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+
+        return name.toString();
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests
+     * @throws IOException if input cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> names = readNames(new File(args[0]));
+        boolean passed = true;
+
+        for (String name : names) {
+            passed &= agrees(name);
+        }
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < RANDOM_NAMES; i++) {
+            passed &= agrees(randomName(random, names));
+        }
+
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+}
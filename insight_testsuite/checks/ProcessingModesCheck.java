@@ -0,0 +1,127 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+
+/**
+ * Checks that the optional processing modes produce exactly the same output as the sequential run:
+ * every test input is processed sequentially, and then in every mode, and the output files are compared byte by byte.
+ * In addition, the first half of every input is processed into a snapshot, which is restored to process
+ * the second half, and the two outputs together must be the same as the output of the whole input.
+ */
+public class ProcessingModesCheck {
+
+    // optional settings of the modes, every mode is run over every test
+    private static final String[][] MODES = {
+            {"--threads=1"},
+            {"--threads=3"},
+            {"--shards=1"},
+            {"--shards=4"},
+            {"--shards=3", "--threads=2"},
+    };
+
+
+    /**
+     * Runs the analysis and returns the output.
+     *
+     * @param input      path to the input file
+     * @param percentile path to the percentile file
+     * @param output     path to the output file
+     * @param settings   optional settings
+     * @return content of the output file
+     * @throws IOException if the analysis fails
+     */
+    private static byte[] run(Path input, Path percentile, Path output, String... settings) throws IOException {
+        List<String> args = new ArrayList<>(Arrays.asList(input.toString(), percentile.toString(), output.toString()));
+        args.addAll(Arrays.asList(settings));
+        new Main(Options.parse(args.toArray(new String[0]))).performDonationAnalysis();
+        return Files.readAllBytes(output);
+    }
+
+    /**
+     * Processes the first half of the input into the snapshot, restores the snapshot to process the second half,
+     * and returns both outputs together.
+     *
+     * @param input      path to the input file
+     * @param percentile path to the percentile file
+     * @param temp       folder for the halves of the input, the snapshot and the outputs
+     * @return content of both output files
+     * @throws IOException if the analysis fails
+     */
+    private static byte[] runSplit(Path input, Path percentile, Path temp) throws IOException {
+        byte[] bytes = Files.readAllBytes(input);
+        int middle = bytes.length / 2;
+        while (middle > 0 && middle < bytes.length && bytes[middle - 1] != '\n') {
+            middle++;
+        }
+
+        Path first = temp.resolve("first.txt");
+        Path second = temp.resolve("second.txt");
+        Path snapshot = temp.resolve("snapshot.bin");
+        Files.write(first, Arrays.copyOfRange(bytes, 0, middle));
+        Files.write(second, Arrays.copyOfRange(bytes, middle, bytes.length));
+
+        ByteArrayOutputStream outputs = new ByteArrayOutputStream();
+        outputs.write(run(first, percentile, temp.resolve("first_output.txt"), "--snapshot=" + snapshot));
+        outputs.write(run(second, percentile, temp.resolve("second_output.txt"), "--restore=" + snapshot));
+        return outputs.toByteArray();
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests
+     * @throws IOException if the analysis fails
+     */
+    public static void main(String[] args) throws IOException {
+        File[] tests = new File(args[0]).listFiles();
+        if (tests == null) {
+            throw new FileNotFoundException(args[0]);
+        }
+        Arrays.sort(tests);
+
+        Path temp = Files.createTempDirectory("modes");
+        Path output = temp.resolve("repeat_donors.txt");
+        int runs = 0;
+        int mismatches = 0;
+
+        try {
+            for (File test : tests) {
+                Path input = new File(test, "input/itcont.txt").toPath();
+                Path percentile = new File(test, "input/percentile.txt").toPath();
+                byte[] expected = run(input, percentile, output);
+
+                for (String[] mode : MODES) {
+                    runs++;
+                    if (!Arrays.equals(run(input, percentile, output, mode), expected)) {
+                        System.out.println("output differs for " + test.getName() + " with " + String.join(" ", mode));
+                        mismatches++;
+                    }
+                }
+
+                runs++;
+                if (!Arrays.equals(runSplit(input, percentile, temp), expected)) {
+                    System.out.println("output differs for " + test.getName() + " restored from the snapshot of the first half");
+                    mismatches++;
+                }
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(temp)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(temp);
+        }
+
+        System.out.printf("%d tests, %d runs, %d mismatches%n", tests.length, runs, mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package donationAnalytics;
+
+import java.util.*;
+
+
+/**
+ * Randomized differential check of {@link RedBlackBST} against {@link TreeMap}. Random sequences of insertions,
+ * updates and deletions are applied to both, and after every operation the size, the lookups, the order statistics
+ * and the height of the red-black tree, which must stay within 2 log2(N + 1), are compared.
+ * Runs of ascending and descending insertions, which rotate at every level, are checked the same way.
+ */
+public class RedBlackBSTCheck {
+
+    private static final int ROUNDS = 200;
+    private static final int MAX_OPERATIONS = 4000;
+    private static final long SEED = 20171201L;
+    private static final int SORTED_KEYS = 100_000;
+    private static final int SORTED_PROBE_INTERVAL = 1000;
+
+
+    /**
+     * Returns {@code true} if the tree holds the same mappings as the map, probing the given key.
+     *
+     * @param tree tree
+     * @param map  reference map
+     * @param key  key to probe
+     * @return true or false
+     */
+    private static boolean agrees(RedBlackBST<Integer, Integer> tree, TreeMap<Integer, Integer> map, int key) {
+        int n = map.size();
+        if (tree.size() != n || tree.isEmpty() != map.isEmpty()) {
+            return false;
+        }
+        if (!Objects.equals(tree.get(key), map.get(key)) || tree.contains(key) != map.containsKey(key)) {
+            return false;
+        }
+        if (tree.rank(key) != map.headMap(key).size()) {
+            return false;
+        }
+        if (n == 0) {
+            return true;
+        }
+        if (!tree.min().equals(map.firstKey()) || !tree.max().equals(map.lastKey())) {
+            return false;
+        }
+        if (!Objects.equals(tree.floor(key), map.floorKey(key)) || !Objects.equals(tree.ceiling(key), map.ceilingKey(key))) {
+            return false;
+        }
+        if (tree.height() > 2 * (32 - Integer.numberOfLeadingZeros(n + 1))) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if every order statistic of the tree is the key of the same rank in the map.
+     *
+     * @param tree tree
+     * @param map  reference map
+     * @return true or false
+     */
+    private static boolean agreesOnSelect(RedBlackBST<Integer, Integer> tree, TreeMap<Integer, Integer> map) {
+        int k = 0;
+        for (Integer key : map.keySet()) {
+            if (!tree.select(k).equals(key) || tree.rank(key) != k) {
+                return false;
+            }
+            k++;
+        }
+        return true;
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests, not used
+     */
+    public static void main(String[] args) {
+        Random random = new Random(SEED);
+        int mismatches = 0;
+
+        for (int round = 0; round < ROUNDS && mismatches == 0; round++) {
+            RedBlackBST<Integer, Integer> tree = new RedBlackBST<>();
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            int range = 1 + random.nextInt(round % 2 == 0 ? 100 : 100_000);
+            int operations = 1 + random.nextInt(MAX_OPERATIONS);
+
+            for (int i = 0; i < operations; i++) {
+                int key = random.nextInt(range);
+                int operation = random.nextInt(10);
+                if (operation < 6) {
+                    tree.put(key, i);
+                    map.put(key, i);
+                } else if (operation == 6) {
+                    tree.put(key, null);            // deletes the key
+                    map.remove(key);
+                } else if (operation == 7) {
+                    tree.delete(key);
+                    map.remove(key);
+                } else if (operation == 8 && !map.isEmpty()) {
+                    tree.deleteMin();
+                    map.pollFirstEntry();
+                } else if (!map.isEmpty()) {
+                    tree.deleteMax();
+                    map.pollLastEntry();
+                }
+
+                if (!agrees(tree, map, random.nextInt(range + 2) - 1)) {
+                    System.out.println("mismatch in round " + round + " after " + (i + 1) + " operations");
+                    mismatches++;
+                    break;
+                }
+            }
+            if (mismatches == 0 && !agreesOnSelect(tree, map)) {
+                System.out.println("order statistics mismatch in round " + round);
+                mismatches++;
+            }
+        }
+
+        for (int step : new int[] {1, -1}) {
+            RedBlackBST<Integer, Integer> tree = new RedBlackBST<>();
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            for (int i = 0; i < SORTED_KEYS && mismatches == 0; i++) {
+                int key = step * i;
+                tree.put(key, i);
+                map.put(key, i);
+                if (i % SORTED_PROBE_INTERVAL == 0 && !agrees(tree, map, key - step)) {
+                    System.out.println("mismatch after " + (i + 1) + " insertions in steps of " + step);
+                    mismatches++;
+                }
+            }
+            if (mismatches == 0 && !agreesOnSelect(tree, map)) {
+                System.out.println("order statistics mismatch after insertions in steps of " + step);
+                mismatches++;
+            }
+        }
+
+        System.out.printf("%d rounds, %d mismatches%n", ROUNDS, mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+
+/**
+ * Measures the observed rank error of the approximate percentiles computed by {@link KllSketch}
+ * against the exact {@link DoubleOrderedTree}.
+ * Every test input is processed the same way as in {@link Main}, and for every output line the rank of the
+ * approximate percentile among the exact amounts of the bucket is compared with the nearest rank.
+ * Since the test buckets are small, all amounts from repeat donors of all tests are also pooled into one stream,
+ * which forces the sketch to compact. The check fails if the observed error exceeds the configured bound.
+ */
+public class SketchRankErrorCheck {
+
+    private static final double RANK_ERROR = 0.01;
+    private static final int[] POOLED_PERCENTILES = {1, 5, 10, 25, 50, 75, 90, 95, 99, 100};
+
+
+    /**
+     * Returns the normalized rank error of {@code value} as the n-th percentile of the exact amounts,
+     * i.e. the distance from the nearest rank to the range of ranks that the value occupies.
+     *
+     * @param exact      all amounts
+     * @param value      approximate percentile
+     * @param percentile percentile
+     * @return normalized rank error
+     */
+    private static double rankError(DoubleOrderedTree exact, double value, int percentile) {
+        int rank = PercentileEngine.nearestRank(percentile, exact.size());
+        int firstRank = exact.rank(value) + 1;                                  // 1-based ranks occupied by the value
+        int lastRank = exact.rank(Math.nextUp(value));
+
+        int distance = Math.max(0, Math.max(firstRank - rank, rank - lastRank));
+        return distance / (double) exact.size();
+    }
+
+    /**
+     * Reads the percentile value from the file.
+     *
+     * @param test folder with the test
+     * @return percentile value
+     * @throws IOException if input cannot be read
+     */
+    private static int readPercentile(File test) throws IOException {
+        return Integer.parseInt(Files.readAllLines(new File(test, "input/percentile.txt").toPath()).get(0).trim());
+    }
+
+    /**
+     * {@code main} method that runs the check.
+     *
+     * @param args {@code path} - path to the folder with the tests
+     * @throws IOException if input cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        File[] tests = new File(args[0]).listFiles();
+        if (tests == null) {
+            throw new FileNotFoundException(args[0]);
+        }
+        Arrays.sort(tests);
+
+        int k = KllSketch.kForRankError(RANK_ERROR);
+        DoubleOrderedTree pooledExact = new DoubleOrderedTree();
+        KllSketch pooledSketch = new KllSketch(k);
+
+        double maxError = 0;
+        double totalError = 0;
+        long lines = 0;
+
+        for (File test : tests) {
+            int percentile = readPercentile(test);
+            DonationsDatabase database = new DonationsDatabase();
+            Map<String, DoubleOrderedTree> exact = new HashMap<>();
+            Map<String, KllSketch> sketches = new HashMap<>();
+            DonationEntryParser parser = database.newParser();
+
+            try (ByteLineReader reader = new ByteLineReader(new FileInputStream(new File(test, "input/itcont.txt")))) {
+                while (reader.nextLine()) {
+                    DonationEntry entry = parser.parse(reader.buffer(), reader.lineStart(), reader.lineEnd());
+                    if (entry == null || !database.ifRepeatDonor(entry.getDonorKey(), entry.getZipcodeKey(), entry.getDate())) {
+                        continue;
+                    }
+
+                    String key = entry.getRecipientID() + "|" + entry.getZipcode() + "|" + entry.getYear();
+                    DoubleOrderedTree amounts = exact.computeIfAbsent(key, x -> new DoubleOrderedTree());
+                    KllSketch sketch = sketches.computeIfAbsent(key, x -> new KllSketch(k));
+                    amounts.put(entry.getAmount());
+                    sketch.put(entry.getAmount());
+                    pooledExact.put(entry.getAmount());
+                    pooledSketch.put(entry.getAmount());
+
+                    double error = rankError(amounts, sketch.percentile(percentile), percentile);
+                    maxError = Math.max(maxError, error);
+                    totalError += error;
+                    lines++;
+                }
+            }
+        }
+
+        double pooledMaxError = 0;
+        for (int percentile : POOLED_PERCENTILES) {
+            pooledMaxError = Math.max(pooledMaxError, rankError(pooledExact, pooledSketch.percentile(percentile), percentile));
+        }
+
+        System.out.printf("k = %d, configured rank error %.4f%n", k, RANK_ERROR);
+        System.out.printf("per-bucket output lines: %d, max rank error %.6f, mean rank error %.6f%n",
+                lines, maxError, lines == 0 ? 0 : totalError / lines);
+        System.out.printf("pooled stream: %d amounts, %d retained, max rank error %.6f%n",
+                pooledSketch.size(), pooledSketch.retained(), pooledMaxError);
+
+        if (maxError > RANK_ERROR || pooledMaxError > RANK_ERROR) {
+            System.exit(1);
+        }
+    }
+
+}
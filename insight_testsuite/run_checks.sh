@@ -0,0 +1,46 @@
+#!/bin/bash
+
+declare -r color_start="\033["
+declare -r color_red="${color_start}0;31m"
+declare -r color_green="${color_start}0;32m"
+declare -r color_norm="${color_start}0m"
+
+GRADER_ROOT=$(dirname ${BASH_SOURCE})
+
+PROJECT_PATH=${GRADER_ROOT}/..
+CHECKS_PATH=${GRADER_ROOT}/checks
+CHECKS_BIN=${GRADER_ROOT}/temp_checks
+
+# compile the project sources together with the checks, which belong to the same package
+function compile_checks {
+  if [ -d ${CHECKS_BIN} ]; then
+    rm -rf ${CHECKS_BIN}
+  fi
+  mkdir -p ${CHECKS_BIN}
+
+  javac -d ${CHECKS_BIN} ${PROJECT_PATH}/src/donationAnalytics/*.java ${CHECKS_PATH}/*.java || exit 1
+}
+
+# every check is a class with main method that receives the tests folder and exits with non-zero status on failure
+function run_all_checks {
+  NUM_CHECKS=0
+  PASS_CNT=0
+
+  for check_file in $(ls ${CHECKS_PATH}/*.java); do
+    check=$(basename ${check_file} .java)
+    NUM_CHECKS=$(($NUM_CHECKS+1))
+
+    if java -cp ${CHECKS_BIN} donationAnalytics.${check} ${GRADER_ROOT}/tests; then
+      echo -e "[${color_green}PASS${color_norm}]: ${check}"
+      PASS_CNT=$(($PASS_CNT+1))
+    else
+      echo -e "[${color_red}FAIL${color_norm}]: ${check}"
+    fi
+  done
+
+  rm -rf ${CHECKS_BIN}
+  echo "[$(date)] ${PASS_CNT} of ${NUM_CHECKS} checks passed"
+}
+
+compile_checks
+run_all_checks
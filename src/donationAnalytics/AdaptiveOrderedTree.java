@@ -0,0 +1,157 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * Exact percentile engine that stores the amounts of a bucket in {@link AmountHistogram} and moves them
+ * into {@link DoubleBPlusTree} once the bucket holds the threshold number of distinct amounts. The donations cluster
+ * on a few round amounts, so most buckets keep the compact histogram, whose size grows with the number of distinct
+ * amounts only; the few large ones, where the histogram would rebuild long arrays for every new amount,
+ * get the wide nodes of the B+-tree. The buckets whose amounts rarely repeat move into the B+-tree earlier,
+ * since almost every donation is a new distinct amount for them. The amounts are moved in linear time
+ * and only once per bucket, since the buckets never shrink.
+ */
+public class AdaptiveOrderedTree implements PercentileEngine {
+
+    /**
+     * Default number of distinct amounts that moves the bucket into the B+-tree.
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 10;
+
+    // the histogram of at least 64 distinct amounts, whose amounts repeat less than 4 times on average,
+    // is moved into the B+-tree regardless of the threshold
+    private static final int MIN_SPARSE_DISTINCT = 64;
+    private static final int MIN_DUPLICATES = 4;
+
+    private final int threshold;
+    private AmountHistogram histogram = new AmountHistogram();     // null once the amounts are in the B+-tree
+    private PercentileEngine amounts = histogram;
+
+
+    /**
+     * Initializes new instance of AdaptiveOrderedTree with the default threshold.
+     */
+    public AdaptiveOrderedTree() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Initializes new instance of AdaptiveOrderedTree.
+     *
+     * @param threshold number of distinct amounts that moves the bucket into the B+-tree, at least 1
+     */
+    public AdaptiveOrderedTree(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold is invalid: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Inserts the amount into the collection, moving the collection into the B+-tree if it has reached the threshold
+     * or its amounts rarely repeat.
+     *
+     * @param amount donation amount
+     */
+    @Override
+    public void put(double amount) {
+        amounts.put(amount);
+        if (histogram != null && isTooSparse(histogram)) {
+            moveToBPlusTree();
+        }
+    }
+
+    /**
+     * Returns the amount that corresponds to the n-th percentile, computed using the nearest-rank method.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return amount corresponding to the percentile
+     */
+    @Override
+    public double percentile(int percentile) {
+        return amounts.percentile(percentile);
+    }
+
+    /**
+     * Computes the amounts that correspond to several percentiles.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the amounts corresponding to the percentiles, in the same order
+     */
+    @Override
+    public void percentiles(int[] percentiles, double[] values) {
+        amounts.percentiles(percentiles, values);
+    }
+
+    /**
+     * Returns the number of amounts in the collection.
+     *
+     * @return number of amounts
+     */
+    @Override
+    public int size() {
+        return amounts.size();
+    }
+
+    /**
+     * Returns {@code true} if the amounts have been moved into the B+-tree.
+     *
+     * @return true or false
+     */
+    public boolean isLarge() {
+        return histogram == null;
+    }
+
+    /**
+     * Writes the amounts into the snapshot, in the same format as {@link DoubleOrderedTree}
+     * regardless of where they are stored.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        amounts.writeTo(out);
+    }
+
+    /**
+     * Restores the amounts of the empty collection from the snapshot, moving them into the B+-tree
+     * if there are at least the threshold number of distinct ones or they rarely repeat.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        if (histogram == null || histogram.size() > 0) {
+            throw new IllegalStateException("collection is not empty");
+        }
+        histogram.readFrom(in);
+        if (isTooSparse(histogram)) {
+            moveToBPlusTree();
+        }
+    }
+
+    // the histogram is too large, or most of the new amounts are distinct and each of them costs O(D) time
+    private boolean isTooSparse(AmountHistogram histogram) {
+        int distinct = histogram.distinctKeys();
+        return distinct >= threshold || distinct >= MIN_SPARSE_DISTINCT && distinct * MIN_DUPLICATES > histogram.size();
+    }
+
+    // replace the histogram with the B+-tree built from its amounts
+    private void moveToBPlusTree() {
+        int n = histogram.distinctKeys();
+        double[] keys = new double[n];
+        int[] counts = new int[n];
+        histogram.copyTo(keys, counts);
+
+        DoubleBPlusTree bPlusTree = new DoubleBPlusTree();
+        bPlusTree.load(keys, counts, n);
+        amounts = bPlusTree;
+        histogram = null;
+    }
+
+}
@@ -0,0 +1,293 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+
+/**
+ * Exact percentile engine that stores the histogram of the amounts: the distinct amounts in a sorted array,
+ * the number of donations of each amount, and the Fenwick tree (binary indexed tree) of these counts.
+ * The donations cluster on a few round amounts, so the memory grows with the number of distinct amounts
+ * rather than with the number of donations.
+ * <p>
+ * A repeated amount is found by the binary search and counted in O(log(D)) time, where D is the number
+ * of distinct amounts, and the amount of the given rank is found in O(log(D)) time by descending the Fenwick tree
+ * along the prefix sums. The positions of the recently counted amounts are cached by their hash,
+ * so the few frequent amounts are usually found without the search. A new distinct amount is inserted
+ * into the arrays and the Fenwick tree is rebuilt from its position, which takes O(D) time, so the histogram suits
+ * the buckets whose amounts mostly repeat, see {@link AdaptiveOrderedTree}.
+ */
+public class AmountHistogram implements PercentileEngine {
+
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int SLOT_BITS = 6;
+
+    private double[] keys;              // distinct amounts in ascending order
+    private int[] counts;               // number of donations of each amount
+    private int[] fenwick;              // fenwick[i] is the sum of counts[i - (i & -i), i), 1 <= i <= distinct
+    private int distinct;
+    private int size;
+
+    // direct-mapped cache of the positions of the recently counted amounts, position + 1 or 0 if empty
+    private final int[] slots = new int[1 << SLOT_BITS];
+
+
+    /**
+     * Initializes the empty histogram.
+     */
+    public AmountHistogram() {
+        keys = new double[DEFAULT_CAPACITY];
+        counts = new int[DEFAULT_CAPACITY];
+        fenwick = new int[DEFAULT_CAPACITY + 1];
+    }
+
+    /**
+     * Counts the amount, inserting it into the histogram if it is new.
+     *
+     * @param amount donation amount
+     */
+    @Override
+    public void put(double amount) {
+        size++;
+
+        // the frequent amounts are found through the cache, the others by the binary search
+        int h = hash(amount);
+        int i = slots[h] - 1;
+        if (i < 0 || keys[i] != amount) {
+            int lo = 0;
+            int hi = distinct;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] < amount) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            i = lo;
+            if (i == distinct || keys[i] != amount) {
+                insert(i, amount);
+                Arrays.fill(slots, 0);          // the slots of the larger amounts have moved
+                slots[h] = i + 1;
+                return;
+            }
+            slots[h] = i + 1;
+        }
+
+        counts[i]++;
+        for (int j = i + 1; j <= distinct; j += j & -j) {
+            fenwick[j]++;
+        }
+    }
+
+    /**
+     * Returns the k-th smallest amount, where 0 <= k < size().
+     *
+     * @param k the order statistic
+     * @return the k-th smallest amount
+     * @throws IllegalArgumentException unless {@code k} is between 0 and size() - 1
+     */
+    public double selectKMin(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IllegalArgumentException("argument to selectKMin() is invalid: " + k);
+        }
+
+        // the fields are read once, and the prefix is bounded by both arrays, since a concurrent insertion
+        // may replace the arrays and shift the amounts, see DonationBucket#readStatistics
+        double[] keys = this.keys;
+        int[] fenwick = this.fenwick;
+        int n = Math.min(distinct, Math.min(keys.length - 1, fenwick.length - 1));
+
+        // the longest prefix of the distinct amounts that holds at most k donations
+        int prefix = 0;
+        for (int step = Integer.highestOneBit(n); step > 0; step >>>= 1) {
+            int next = prefix + step;
+            if (next <= n && fenwick[next] <= k) {
+                prefix = next;
+                k -= fenwick[next];
+            }
+        }
+        return keys[prefix];
+    }
+
+    /**
+     * Returns the amount that corresponds to the n-th percentile, computed using the nearest-rank method.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return amount corresponding to the percentile
+     */
+    @Override
+    public double percentile(int percentile) {
+        return selectKMin(PercentileEngine.nearestRank(percentile, size()) - 1);
+    }
+
+    /**
+     * Computes the amounts that correspond to several percentiles in one descent of the Fenwick tree:
+     * at every step the ranks of the percentiles are split between the prefix and the following amounts,
+     * so the common part of their paths is walked once instead of once per percentile.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the amounts corresponding to the percentiles, in the same order
+     */
+    @Override
+    public void percentiles(int[] percentiles, double[] values) {
+        select(Integer.highestOneBit(distinct), 0, 0, percentiles, 0, percentiles.length, values);
+    }
+
+    /**
+     * Returns the number of donations in the histogram.
+     *
+     * @return number of donations
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of distinct amounts in the histogram.
+     *
+     * @return number of distinct amounts
+     */
+    int distinctKeys() {
+        return distinct;
+    }
+
+    /**
+     * Copies the distinct amounts in ascending order and their counts into the arrays,
+     * which must have room for {@link #distinctKeys()} elements.
+     *
+     * @param keys   array that receives the distinct amounts
+     * @param counts array that receives the number of donations of each distinct amount
+     */
+    void copyTo(double[] keys, int[] counts) {
+        System.arraycopy(this.keys, 0, keys, 0, distinct);
+        System.arraycopy(this.counts, 0, counts, 0, distinct);
+    }
+
+    /**
+     * Writes the distinct amounts in ascending order together with their counts into the snapshot,
+     * in the same format as {@link DoubleOrderedTree}.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(DatabaseSnapshot.EXACT_AMOUNTS);
+        out.writeInt(distinct);
+        for (int i = 0; i < distinct; i++) {
+            out.writeDouble(keys[i]);
+            out.writeInt(counts[i]);
+        }
+    }
+
+    /**
+     * Restores the empty histogram from the distinct amounts in ascending order and their counts,
+     * building the Fenwick tree in linear time.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        if (size > 0) {
+            throw new IllegalStateException("histogram is not empty");
+        }
+        DatabaseSnapshot.readTag(in, DatabaseSnapshot.EXACT_AMOUNTS);
+
+        int n = DatabaseSnapshot.readCount(in);
+        if (n > keys.length) {
+            keys = new double[n];
+            counts = new int[n];
+            fenwick = new int[n + 1];
+        }
+        for (int i = 0; i < n; i++) {
+            keys[i] = in.readDouble();
+            counts[i] = in.readInt();
+            if (counts[i] < 1 || i > 0 && !(keys[i] > keys[i - 1])) {
+                throw new StreamCorruptedException("snapshot is corrupted: amounts are not ascending");
+            }
+            size += counts[i];
+        }
+        distinct = n;
+        rebuild(0);
+    }
+
+    // insert new distinct amount with count 1 at position i
+    private void insert(int i, double amount) {
+        if (distinct == keys.length) {
+            int capacity = distinct * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            fenwick = Arrays.copyOf(fenwick, capacity + 1);
+        }
+        System.arraycopy(keys, i, keys, i + 1, distinct - i);
+        System.arraycopy(counts, i, counts, i + 1, distinct - i);
+        keys[i] = amount;
+        counts[i] = 1;
+        distinct++;
+        rebuild(i);
+    }
+
+    // find the amounts of the percentiles lo..hi-1, whose ranks follow the prefix of the distinct amounts
+    // that holds base donations, descending the Fenwick tree from the given step
+    private void select(int step, int prefix, int base, int[] percentiles, int lo, int hi, double[] values) {
+        for (; step > 0 && lo < hi; step >>>= 1) {
+            int next = prefix + step;
+            if (next > distinct) {
+                continue;
+            }
+
+            // the ranks up to the donations of the longer prefix stay, the others move past it
+            int below = base + fenwick[next];
+            int j = lo;
+            while (j < hi && PercentileEngine.nearestRank(percentiles[j], size) <= below) {
+                j++;
+            }
+            if (j < hi) {
+                if (j == lo) {
+                    prefix = next;
+                    base = below;
+                } else {
+                    select(step >>> 1, next, below, percentiles, j, hi, values);
+                    hi = j;
+                }
+            }
+        }
+        for (int i = lo; i < hi; i++) {
+            values[i] = keys[prefix];
+        }
+    }
+
+    // index of the amount in the cache of the positions
+    private static int hash(double amount) {
+        long bits = Double.doubleToRawLongBits(amount);
+        return (int) ((bits * 0x9E3779B97F4A7C15L) >>> (64 - SLOT_BITS));
+    }
+
+    // recompute the Fenwick tree from the counts in linear time, adding every node into its parent;
+    // the nodes up to the given index cover only the unchanged counts, and are only added into the nodes above it
+    private void rebuild(int from) {
+        int n = distinct;
+        for (int i = from + 1; i <= n; i++) {
+            fenwick[i] = counts[i - 1];
+        }
+        for (int i = from; i > 0; i -= i & -i) {
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                fenwick[parent] += fenwick[i];
+            }
+        }
+        for (int i = from + 1; i <= n; i++) {
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                fenwick[parent] += fenwick[i];
+            }
+        }
+    }
+
+}
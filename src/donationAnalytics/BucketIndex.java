@@ -0,0 +1,278 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.function.Supplier;
+
+
+/**
+ * Single-level index of the donation buckets, keyed by the composite of recipient ID, zip code and year.
+ * The recipient ID is the id assigned by the dictionary of the database, see {@link DonationEntry#getRecipientKey()},
+ * and the zip code and the year are packed into one int, and the index is implemented as an open-addressing
+ * hash table with linear probing over parallel arrays, so that a bucket is found by one hash probe
+ * in amortized O(1) time.
+ * <p>
+ * The index is modified by a single thread, and other threads may look up the buckets concurrently,
+ * see {@link #getConcurrently(int, int, int)}. Like {@link DonationBucket}, the index is versioned,
+ * and the version changes only when a new bucket is inserted.
+ */
+public class BucketIndex {
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(BucketIndex.class, "version", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    // the table is resized when it is filled by more than 3/4
+    private static final int MAX_LOAD_NUMERATOR = 3;
+    private static final int MAX_LOAD_DENOMINATOR = 4;
+
+    // the year key takes the lower 14 bits of the packed key, see DonationEntry.encodeYear
+    private static final int YEAR_BITS = 14;
+
+    private static final int EMPTY = -1;
+
+    private int[] recipients;           // EMPTY marks an empty slot
+    private int[] zipYears;
+    private DonationBucket[] buckets;
+
+    private int size;
+    private int mask;                   // capacity - 1, capacity is a power of 2
+    private int version;                // odd while the new bucket is being inserted
+
+    private final Supplier<PercentileEngine> engines;
+
+
+    /**
+     * Initializes empty index.
+     *
+     * @param engines factory of the percentile engines for the new buckets
+     */
+    public BucketIndex(Supplier<PercentileEngine> engines) {
+        this.engines = engines;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns the bucket that corresponds to the combination of keys, creating the empty one if necessary.
+     *
+     * @param recipient recipient ID key, see {@link DonationEntry#getRecipientKey()}
+     * @param zipcode   zip code, see {@link DonationEntry#getZipcodeKey()}
+     * @param year      year, see {@link DonationEntry#getYearKey()}
+     * @return bucket
+     */
+    public DonationBucket getOrCreate(int recipient, int zipcode, int year) {
+        int zipYear = pack(zipcode, year);
+        int i = hash(recipient, zipYear) & mask;
+
+        for (int r = recipients[i]; r != EMPTY; r = recipients[i]) {
+            if (r == recipient && zipYears[i] == zipYear) {
+                return buckets[i];
+            }
+            i = (i + 1) & mask;
+        }
+
+        DonationBucket bucket = new DonationBucket(engines.get());
+        int v = version;
+        VERSION.setOpaque(this, v + 1);
+        VarHandle.storeStoreFence();
+
+        recipients[i] = recipient;
+        zipYears[i] = zipYear;
+        buckets[i] = bucket;
+        if (++size * MAX_LOAD_DENOMINATOR > recipients.length * MAX_LOAD_NUMERATOR) {
+            resize();
+        }
+
+        VERSION.setRelease(this, v + 2);
+        return bucket;
+    }
+
+    /**
+     * Returns the bucket that corresponds to the combination of keys.
+     *
+     * @param recipient recipient ID key, see {@link DonationEntry#getRecipientKey()}
+     * @param zipcode   zip code, see {@link DonationEntry#getZipcodeKey()}
+     * @param year      year, see {@link DonationEntry#getYearKey()}
+     * @return bucket, or {@code null} if there were no donations for the combination of keys
+     */
+    public DonationBucket get(int recipient, int zipcode, int year) {
+        int zipYear = pack(zipcode, year);
+        int i = hash(recipient, zipYear) & mask;
+
+        for (int r = recipients[i]; r != EMPTY; r = recipients[i]) {
+            if (r == recipient && zipYears[i] == zipYear) {
+                return buckets[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bucket that corresponds to the combination of keys, while the buckets may be inserted
+     * by another thread. The lookup is repeated if a bucket was inserted in the meantime, with the same backoff
+     * and the same bound on the attempts as {@link DonationBucket#readStatistics(int)}.
+     *
+     * @param recipient recipient ID key, see {@link DonationEntry#getRecipientKey()}
+     * @param zipcode   zip code, see {@link DonationEntry#getZipcodeKey()}
+     * @param year      year, see {@link DonationEntry#getYearKey()}
+     * @return bucket, or {@code null} if the index does not contain it
+     * @throws ConcurrentModificationException if every attempt was overtaken by the insertion
+     */
+    public DonationBucket getConcurrently(int recipient, int zipcode, int year) {
+        int zipYear = pack(zipcode, year);
+        int hash = hash(recipient, zipYear);
+
+        for (int attempt = 0; attempt < DonationBucket.MAX_ATTEMPTS; attempt++) {
+            int v = (int) VERSION.getAcquire(this);
+            if ((v & 1) == 0) {
+                DonationBucket bucket = null;
+                int[] recipients = this.recipients;
+                int[] zipYears = this.zipYears;
+                DonationBucket[] buckets = this.buckets;
+                int mask = this.mask;
+
+                // the arrays and the mask may be of different capacities, and the number of probes is bounded,
+                // since the torn table may have no empty slots
+                boolean consistent = mask < Math.min(recipients.length, Math.min(zipYears.length, buckets.length));
+                int i = hash & mask;
+                for (int probes = 0; consistent && probes <= mask; probes++) {
+                    int r = recipients[i];
+                    if (r == EMPTY) {
+                        break;
+                    }
+                    if (r == recipient && zipYears[i] == zipYear) {
+                        bucket = buckets[i];
+                        break;
+                    }
+                    i = (i + 1) & mask;
+                }
+                VarHandle.loadLoadFence();
+                if (consistent && (int) VERSION.getOpaque(this) == v) {
+                    return bucket;
+                }
+            }
+            DonationBucket.backOff(attempt);
+        }
+        throw new ConcurrentModificationException("index is modified too often to find the bucket");
+    }
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return number of buckets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes all buckets with their keys into the snapshot.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < recipients.length; i++) {
+            if (recipients[i] != EMPTY) {
+                out.writeInt(recipients[i]);
+                out.writeInt(zipYears[i]);
+                buckets[i].writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Adds the buckets from the snapshot to the empty index.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        for (int n = DatabaseSnapshot.readCount(in); n > 0; n--) {
+            int recipient = in.readInt();
+            if (recipient < 0) {
+                throw new StreamCorruptedException("snapshot is corrupted: recipient key " + recipient);
+            }
+            int zipYear = in.readInt();
+            getOrCreate(recipient, zipYear >>> YEAR_BITS, zipYear & ((1 << YEAR_BITS) - 1)).readFrom(in);
+        }
+    }
+
+    /**
+     * Doubles the capacity of the table and reinserts all buckets.
+     */
+    private void resize() {
+        int[] oldRecipients = recipients;
+        int[] oldZipYears = zipYears;
+        DonationBucket[] oldBuckets = buckets;
+
+        allocate(oldRecipients.length * 2);
+        for (int j = 0; j < oldRecipients.length; j++) {
+            if (oldRecipients[j] == EMPTY) {
+                continue;
+            }
+
+            int i = hash(oldRecipients[j], oldZipYears[j]) & mask;
+            while (recipients[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            recipients[i] = oldRecipients[j];
+            zipYears[i] = oldZipYears[j];
+            buckets[i] = oldBuckets[j];
+        }
+    }
+
+    /**
+     * Allocates empty table of the given capacity.
+     *
+     * @param capacity power of 2
+     */
+    private void allocate(int capacity) {
+        recipients = new int[capacity];
+        Arrays.fill(recipients, EMPTY);
+        zipYears = new int[capacity];
+        buckets = new DonationBucket[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Packs the zip code and the year keys into one int.
+     *
+     * @param zipcode zip code key, below 2^17
+     * @param year    year key, below 2^14
+     * @return packed key
+     */
+    private static int pack(int zipcode, int year) {
+        return (zipcode << YEAR_BITS) | year;
+    }
+
+    /**
+     * Returns the well-mixed hash of the composite key, so that linear probing does not form long clusters.
+     *
+     * @param recipient recipient ID key, see {@link DonationEntry#getRecipientKey()}
+     * @param zipYear   packed zip code and year
+     * @return hash
+     */
+    private static int hash(int recipient, int zipYear) {
+        int h = recipient * 31 + zipYear;
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
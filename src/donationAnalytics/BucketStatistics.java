@@ -0,0 +1,55 @@
+package donationAnalytics;
+
+
+/**
+ * Immutable statistics of a bucket at one moment: the percentile, the cumulative donation and the transaction count,
+ * which are consistent with each other, see {@link DonationBucket#readStatistics(int)}.
+ */
+public final class BucketStatistics {
+
+    private final int percentile;
+    private final int cumulative;
+    private final int transactionCount;
+
+
+    /**
+     * Initializes the statistics.
+     *
+     * @param percentile       amount that corresponds to the percentile, rounded to the whole dollar
+     * @param cumulative       cumulative donation, rounded to the whole dollar
+     * @param transactionCount total transaction count
+     */
+    public BucketStatistics(int percentile, int cumulative, int transactionCount) {
+        this.percentile = percentile;
+        this.cumulative = cumulative;
+        this.transactionCount = transactionCount;
+    }
+
+    /**
+     * Returns the amount that corresponds to the percentile.
+     *
+     * @return value corresponding to the percentile
+     */
+    public int getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Returns the cumulative donation.
+     *
+     * @return cumulative donation
+     */
+    public int getCumulative() {
+        return cumulative;
+    }
+
+    /**
+     * Returns the total transaction count.
+     *
+     * @return transaction count
+     */
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+}
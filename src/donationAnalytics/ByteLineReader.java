@@ -0,0 +1,155 @@
+package donationAnalytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Reads the input stream line by line without decoding the bytes into Strings.
+ * The current line is exposed as the slice {@code buffer()[lineStart(), lineEnd())} of the internal buffer,
+ * which remains valid until the next call to {@link #nextLine()}.
+ * A line is considered to be terminated by any one of '\n', '\r' or "\r\n",
+ * the same way as in {@link java.io.BufferedReader#readLine()}.
+ */
+public class ByteLineReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+
+    private byte[] buffer;
+    private int position, limit;          // unread bytes are stored in buffer[position, limit)
+    private int lineStart, lineEnd;
+
+    private boolean skipLF;               // true if the previous line ended with '\r'
+    private boolean endOfStream;
+
+
+    /**
+     * Initializes the reader with the default buffer size.
+     *
+     * @param in input stream
+     */
+    public ByteLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Initializes the reader.
+     *
+     * @param in         input stream
+     * @param bufferSize initial size of the buffer, which grows if a line does not fit in it
+     */
+    public ByteLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return {@code true} if the line was read, {@code false} if the end of stream is reached
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean nextLine() throws IOException {
+        int scanned = position;
+
+        while (true) {
+            if (skipLF && position < limit) {
+                skipLF = false;
+                if (buffer[position] == '\n') {
+                    scanned = ++position;
+                }
+            }
+
+            for (int i = scanned; i < limit; i++) {
+                byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    lineStart = position;
+                    lineEnd = i;
+                    position = i + 1;
+                    skipLF = b == '\r';
+                    return true;
+                }
+            }
+
+            if (endOfStream) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position;           // last line without terminator
+                lineEnd = limit;
+                position = limit;
+                return true;
+            }
+
+            scanned = limit - position;
+            fill();
+        }
+    }
+
+    /**
+     * Returns the buffer that contains the current line.
+     *
+     * @return buffer
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the index of the first byte of the current line.
+     *
+     * @return index in the buffer
+     */
+    public int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Returns the index following the last byte of the current line, excluding the line terminator.
+     *
+     * @return index in the buffer
+     */
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Moves the unread bytes to the beginning of the buffer, growing it if necessary,
+     * and reads more bytes from the stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, position, larger, 0, remaining);
+            buffer = larger;
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            endOfStream = true;
+        } else {
+            limit += n;
+        }
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,218 @@
+package donationAnalytics;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Writes lines into the file directly as bytes, without building intermediate Strings.
+ * The values are formatted into the reusable buffer, which is written to the {@link FileChannel} in large blocks.
+ * ASCII strings are copied byte by byte, and other strings are encoded with the default charset,
+ * so the output is the same as the output of {@link java.io.FileWriter}.
+ */
+public class ByteLineWriter implements Closeable, Flushable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final byte[] MIN_INT = Integer.toString(Integer.MIN_VALUE).getBytes(Charset.defaultCharset());
+
+    private final FileChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer wrapped;
+    private int position;
+
+
+    /**
+     * Creates or truncates the file and initializes the writer with the default buffer size.
+     *
+     * @param path path to the file
+     * @throws IOException if the file cannot be opened
+     */
+    public ByteLineWriter(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * Creates or opens the file and initializes the writer with the default buffer size.
+     *
+     * @param path   path to the file
+     * @param append {@code true} to append the lines to the existing file, {@code false} to truncate it
+     * @throws IOException if the file cannot be opened
+     */
+    public ByteLineWriter(Path path, boolean append) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE, append);
+    }
+
+    /**
+     * Creates or truncates the file and initializes the writer.
+     *
+     * @param path       path to the file
+     * @param bufferSize size of the buffer, at least 16 bytes
+     * @throws IOException if the file cannot be opened
+     */
+    public ByteLineWriter(Path path, int bufferSize) throws IOException {
+        this(path, bufferSize, false);
+    }
+
+    /**
+     * Creates or opens the file and initializes the writer.
+     *
+     * @param path       path to the file
+     * @param bufferSize size of the buffer, at least 16 bytes
+     * @param append     {@code true} to append the lines to the existing file, {@code false} to truncate it
+     * @throws IOException if the file cannot be opened
+     */
+    public ByteLineWriter(Path path, int bufferSize, boolean append) throws IOException {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("buffer size is too small: " + bufferSize);
+        }
+        buffer = new byte[bufferSize];
+        wrapped = ByteBuffer.wrap(buffer);
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes the string.
+     *
+     * @param s string
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(String s) throws IOException {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                write(s.getBytes(Charset.defaultCharset()));
+                return;
+            }
+        }
+
+        int i = 0;
+        while (i < n) {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            int end = Math.min(n, i + buffer.length - position);
+            for (; i < end; i++) {
+                buffer[position++] = (byte) s.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Writes the ASCII character.
+     *
+     * @param c character, c < 0x80
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    /**
+     * Writes the decimal representation of the integer, the same as {@link Integer#toString(int)}.
+     *
+     * @param value integer
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeInt(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            write(MIN_INT);
+            return;
+        }
+        if (buffer.length - position < 11) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        position += digits;
+        for (int i = position - 1; i >= position - digits; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Writes the line separator.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void newLine() throws IOException {
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the bytes.
+     *
+     * @param bytes bytes
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(byte[] bytes) throws IOException {
+        int i = 0;
+        while (i < bytes.length) {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(bytes.length - i, buffer.length - position);
+            System.arraycopy(bytes, i, buffer, position, n);
+            position += n;
+            i += n;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes into the channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void flushBuffer() throws IOException {
+        wrapped.clear().limit(position);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        position = 0;
+    }
+
+    /**
+     * Writes the buffered bytes into the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    /**
+     * Writes the buffered bytes and closes the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package donationAnalytics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+
+/**
+ * Binary snapshot of the complete state of the {@link DonationsDatabase}, so that the processing of the next input
+ * file can resume from the state after the previous ones instead of replaying all of them.
+ * <p>
+ * The snapshot starts with the magic number, the format version and the position in the followed input file,
+ * followed by the dictionaries of the recipient IDs
+ * and the donor names in the order of their ids, all donors with the year of their earliest donation, and all buckets
+ * with their keys, cumulative donation, transaction count and the state of the percentile engine, and ends
+ * with the CRC-32 of the preceding bytes. The exact engines store
+ * every distinct amount once together with its multiplicity in ascending order, which allows to rebuild them
+ * in linear time; the sketches store their compactors, each sorted in ascending order. The snapshot is written
+ * into the temporary file, which then replaces the target, so an interrupted run never leaves a partial snapshot behind.
+ */
+final class DatabaseSnapshot {
+
+    private static final int MAGIC = 0x44415342;        // "DASB"
+    static final int VERSION = 6;                       // 6: sorted sketch levels
+
+    // tags of the state of the percentile engines
+    static final byte EXACT_AMOUNTS = 1;
+    static final byte SKETCH = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+
+    private DatabaseSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of the database into the file.
+     *
+     * @param database      database
+     * @param inputPosition position in the followed input file after the processed lines, or 0
+     * @param path          path to the file
+     * @throws IOException if the file cannot be written
+     */
+    static void save(DonationsDatabase database, long inputPosition, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checked.writeInt(MAGIC);
+            checked.writeInt(VERSION);
+            checked.writeLong(inputPosition);
+            database.writeTo(checked);
+            checked.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores the state of the empty database from the snapshot.
+     *
+     * @param database empty database
+     * @param path     path to the file
+     * @return position in the followed input file after the processed lines, or 0
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    static long load(DonationsDatabase database, Path path) throws IOException {
+        CRC32 crc = new CRC32();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            DataInputStream checked = new DataInputStream(new CheckedInputStream(in, crc));
+            if (checked.readInt() != MAGIC) {
+                throw new StreamCorruptedException("not a snapshot: " + path);
+            }
+            int version = checked.readInt();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("snapshot version " + version + " is not supported: " + path);
+            }
+            long inputPosition = checked.readLong();
+            if (inputPosition < 0) {
+                throw new StreamCorruptedException("snapshot is corrupted: negative input position " + inputPosition);
+            }
+            database.readFrom(checked);
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new StreamCorruptedException("snapshot is corrupted: " + path);
+            }
+            return inputPosition;
+        }
+    }
+
+    /**
+     * Writes the string as UTF-8 bytes prefixed by their number.
+     *
+     * @param out output
+     * @param s   string
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in input
+     * @return string
+     * @throws IOException if an I/O error occurs
+     */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the non-negative number of the following elements.
+     *
+     * @param in input
+     * @return number
+     * @throws IOException if an I/O error occurs or the number is negative
+     */
+    static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new StreamCorruptedException("snapshot is corrupted: negative count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Reads and checks the tag of the state of the percentile engine.
+     *
+     * @param in       input
+     * @param expected tag of the engine that restores the state
+     * @throws IOException if an I/O error occurs or the state belongs to another kind of engine
+     */
+    static void readTag(DataInput in, byte expected) throws IOException {
+        byte tag = in.readByte();
+        if (tag != expected) {
+            throw new StreamCorruptedException(tag == EXACT_AMOUNTS || tag == SKETCH
+                    ? "snapshot was made with " + (tag == SKETCH ? "approximate" : "exact") + " percentiles"
+                    : "snapshot is corrupted: unknown engine " + tag);
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * All donations from repeat donors for a single combination of keys: recipient ID, zip code and year.
+ * Holds the running total, the transaction count and the percentile engine with the donation amounts together,
+ * so that all statistics of the bucket are computed once it is found in the index.
+ * <p>
+ * The bucket is modified by a single thread, and other threads may read its statistics concurrently,
+ * see {@link #readStatistics(int)}. The bucket is versioned like a sequence lock: the version is odd while
+ * the donation is being added, and the reader retries if the version has changed while it was reading,
+ * so the readers never block the writer, and the writer pays only for two ordered stores.
+ */
+public class DonationBucket {
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(DonationBucket.class, "version", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // the attempts to read the statistics, up to about 40 ms of parking once the spins and yields are exhausted
+    private static final int SPINS = 64;
+    private static final int YIELDS = 64;
+    private static final long PARK_NANOS = 50_000;
+    static final int MAX_ATTEMPTS = 1024;
+
+    private final PercentileEngine amounts;
+    private long total;                 // in millionths of a dollar
+    private int count;
+    private int version;                // odd while the bucket is being modified
+
+
+    /**
+     * Initializes empty bucket.
+     *
+     * @param amounts empty percentile engine that will store the donation amounts
+     */
+    public DonationBucket(PercentileEngine amounts) {
+        this.amounts = amounts;
+    }
+
+    /**
+     * Adds the donation amount to the bucket. The percentile engine receives the amount as it was parsed,
+     * and the running total is kept in millionths of a dollar, so it is exact for the amounts given to the cent
+     * or to a fraction of a cent. The total saturates at {@link Long#MAX_VALUE} instead of overflowing.
+     *
+     * @param amount donation amount
+     * @param micros non-negative donation amount in millionths of a dollar, see {@link DonationEntry#toMicros(double)}
+     */
+    public void addDonation(double amount, long micros) {
+        int v = version;
+        VERSION.setOpaque(this, v + 1);
+        VarHandle.storeStoreFence();            // the odd version is visible before any of the changes
+
+        amounts.put(amount);
+        try {
+            total = Math.addExact(total, micros);
+        } catch (ArithmeticException e) {
+            total = Long.MAX_VALUE;
+        }
+        count++;
+
+        VERSION.setRelease(this, v + 2);        // all changes are visible before the even version
+    }
+
+    /**
+     * Returns the consistent statistics of the bucket, while the donations may be added by another thread.
+     * The statistics are computed optimistically and recomputed if a donation was added in the meantime.
+     * The percentile engine must support any percentile and must not modify itself when the percentile is computed;
+     * it may return a wrong amount or throw {@link RuntimeException} on the state torn by the insertion, but it must
+     * not loop, and both outcomes are discarded. A reader that keeps losing to the writer spins, then yields,
+     * and then parks briefly between the attempts, and gives up after a bounded number of them.
+     *
+     * @param percentile percentile to search for
+     * @return statistics, or {@code null} if the bucket does not have donations yet
+     * @throws ConcurrentModificationException if every attempt was overtaken by the insertion
+     */
+    public BucketStatistics readStatistics(int percentile) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int v = (int) VERSION.getAcquire(this);
+            if ((v & 1) == 0) {
+                try {
+                    int transactionCount = count;
+                    BucketStatistics statistics = transactionCount == 0 ? null
+                            : new BucketStatistics(findPercentile(percentile), findCumulative(), transactionCount);
+                    VarHandle.loadLoadFence();
+                    if ((int) VERSION.getOpaque(this) == v) {
+                        return statistics;
+                    }
+                } catch (RuntimeException e) {
+                    // the engine may fail on the state torn by the concurrent insertion, but not on the consistent one
+                    VarHandle.loadLoadFence();
+                    if ((int) VERSION.getOpaque(this) == v) {
+                        throw e;
+                    }
+                }
+            }
+            backOff(attempt);
+        }
+        throw new ConcurrentModificationException("bucket is modified too often to read its statistics");
+    }
+
+    /**
+     * Returns the amount that corresponds to the n-th percentile, rounded to the whole dollar.
+     * The percentile is computed using the nearest-rank method by the percentile engine.
+     *
+     * @param percentile percentile to search for
+     * @return value corresponding to the percentile
+     */
+    public int findPercentile(int percentile) {
+        return (int) Math.round(amounts.percentile(percentile));
+    }
+
+    /**
+     * Computes all statistics of the bucket at once: the amounts that correspond to the percentiles,
+     * found by the percentile engine in one pass and rounded to the whole dollar,
+     * followed by the cumulative donation and the transaction count.
+     *
+     * @param percentiles percentiles in ascending order
+     * @param values      scratch array of {@code percentiles.length} elements owned by the caller,
+     *                    which receives the amounts before rounding
+     * @param statistics  array of {@code percentiles.length + 2} elements that receives the statistics
+     */
+    public void findStatistics(int[] percentiles, double[] values, int[] statistics) {
+        int k = percentiles.length;
+        if (k == 1) {
+            statistics[0] = findPercentile(percentiles[0]);
+        } else {
+            amounts.percentiles(percentiles, values);
+            for (int i = 0; i < k; i++) {
+                statistics[i] = (int) Math.round(values[i]);
+            }
+        }
+        statistics[k] = findCumulative();
+        statistics[k + 1] = count;
+    }
+
+    /**
+     * Returns the cumulative donation, rounded to the whole dollar, or {@link Integer#MAX_VALUE}
+     * if it does not fit into an {@code int}.
+     *
+     * @return cumulative donation
+     */
+    public int findCumulative() {
+        long dollars = total / 1_000_000 + (total % 1_000_000 >= 500_000 ? 1 : 0);
+        return dollars > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) dollars;
+    }
+
+    /**
+     * Returns the total transaction count.
+     *
+     * @return transaction count
+     */
+    public int findTransactionCount() {
+        return count;
+    }
+
+    /**
+     * Writes the cumulative donation, the transaction count and the amounts into the snapshot.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(total);
+        out.writeInt(count);
+        amounts.writeTo(out);
+    }
+
+    /**
+     * Restores the empty bucket from the snapshot.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        total = in.readLong();
+        if (total < 0) {
+            throw new StreamCorruptedException("snapshot is corrupted: negative cumulative donation " + total);
+        }
+        count = DatabaseSnapshot.readCount(in);
+        amounts.readFrom(in);
+    }
+
+    /**
+     * Waits before the next optimistic read of the statistics or of the {@link BucketIndex}.
+     *
+     * @param attempt number of the failed attempts
+     */
+    static void backOff(int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+}
@@ -1,7 +1,5 @@
 package donationAnalytics;
 
-import java.util.*;
-
 
 /**
  * Class that parses single donation entry.
@@ -9,27 +7,50 @@ import java.util.*;
  */
 public class DonationEntry {
 
-    private static final int NUMBER_OF_FIELDS = 21;
+    static final int NUMBER_OF_FIELDS = 21;
 
     // entry is not valid if this is not true
-    private static final int ZIPCODE_LENGTH = 5;
+    static final int ZIPCODE_LENGTH = 5;
     // private static final int FILER_ID_LENGTH = 9;
 
 
     // relevant fields positions in the entry
-    private static final int FILER_ID_POSITION = 0;
-    private static final int DONOR_NAME_POSITION = 7;
-    private static final int ZIPCODE_POSITION = 10;
-    private static final int DATE_POSITION = 13;
-    private static final int AMOUNT_POSITION = 14;
-    private static final int OTHER_ID_POSITION = 15;
+    static final int FILER_ID_POSITION = 0;
+    static final int DONOR_NAME_POSITION = 7;
+    static final int ZIPCODE_POSITION = 10;
+    static final int DATE_POSITION = 13;
+    static final int AMOUNT_POSITION = 14;
+    static final int OTHER_ID_POSITION = 15;
+
+    // zip codes with a leading sign, which are accepted by Integer.parseInt, are encoded above the 5-digit numbers
+    private static final int PLUS_SIGN_ZIPCODES = 100000;
+    private static final int MINUS_SIGN_ZIPCODES = 110000;
+
+    // years with a leading plus sign are encoded above the 4-digit numbers
+    private static final int PLUS_SIGN_YEARS = 10000;
+
+    // the largest amount that is added to the cumulative donation, in dollars; 10^18 millionths still fit into a long
+    static final double MAX_AMOUNT = 1e12;
+
+    // validation rules, the first one that the entry fails is reported by getRejection
+    static final int VALID = 0;
+    static final int INVALID_FIELD_COUNT = 1;
+    static final int INVALID_OTHER_ID = 2;
+    static final int INVALID_RECIPIENT = 3;
+    static final int INVALID_DONOR_NAME = 4;
+    static final int INVALID_ZIPCODE = 5;
+    static final int INVALID_AMOUNT = 6;
+    static final int INVALID_DATE = 7;
+    static final int NUMBER_OF_RULES = 8;
 
 
     private String recipient, donorName, zipcode, year;
     private double amount;
-    private Calendar date;
+    private long micros;                // donation amount in millionths of a dollar
+    private int date, zipcodeKey;
+    private int recipientKey = -1, donorKey = -1;      // ids in the dictionaries, -1 if not encoded
 
-    private final boolean is_valid;
+    private final int rejection;        // VALID or the validation rule that the entry fails
 
 
     /**
@@ -42,12 +63,42 @@ public class DonationEntry {
     public DonationEntry(String line) {
         String[] fields = line.split("\\|", -1);
         if (fields.length != NUMBER_OF_FIELDS) {
-            is_valid = false;
+            rejection = INVALID_FIELD_COUNT;
         } else {
-            is_valid = isValid(fields);
+            rejection = rejection(fields);
         }
     }
 
+    /**
+     * Initializes the entry from the fields that have already been validated.
+     * Used by {@link DonationEntryParser}, which validates the fields in place.
+     *
+     * @param recipient    recipient ID
+     * @param recipientKey id of the recipient ID in the dictionary
+     * @param donorName    name of donor
+     * @param donorKey     id of the name of donor in the dictionary
+     * @param zipcode      zip code of donor
+     * @param zipcodeKey   zip code of donor encoded as int, see {@link #encodeZipcode(char, int)}
+     * @param year         donation year
+     * @param amount       donation amount
+     * @param micros       donation amount in millionths of a dollar, see {@link #toMicros(double)}
+     * @param date         donation date packed as yyyymmdd
+     */
+    DonationEntry(String recipient, int recipientKey, String donorName, int donorKey,
+                  String zipcode, int zipcodeKey, String year, double amount, long micros, int date) {
+        this.recipient = recipient;
+        this.recipientKey = recipientKey;
+        this.donorName = donorName;
+        this.donorKey = donorKey;
+        this.zipcode = zipcode;
+        this.zipcodeKey = zipcodeKey;
+        this.year = year;
+        this.amount = amount;
+        this.micros = micros;
+        this.date = date;
+        rejection = VALID;
+    }
+
     /**
      * Returns recipient ID.
      *
@@ -57,6 +108,15 @@ public class DonationEntry {
         return recipient;
     }
 
+    /**
+     * Returns the id of the recipient ID in the dictionary of the recipients, see {@link StringDictionary}.
+     *
+     * @return recipient key, or -1 if the entry was not created by {@link DonationEntryParser}
+     */
+    public int getRecipientKey() {
+        return recipientKey;
+    }
+
     /**
      * Returns the name of the donor.
      *
@@ -66,6 +126,15 @@ public class DonationEntry {
         return donorName;
     }
 
+    /**
+     * Returns the id of the name of the donor in the dictionary of the donor names, see {@link StringDictionary}.
+     *
+     * @return donor key, or -1 if the entry was not created by {@link DonationEntryParser}
+     */
+    public int getDonorKey() {
+        return donorKey;
+    }
+
     /**
      * Returns zip code of donor.
      *
@@ -75,6 +144,16 @@ public class DonationEntry {
         return zipcode;
     }
 
+    /**
+     * Returns zip code of donor encoded as int.
+     * Zip codes that consist of 5 digits are encoded by their value.
+     *
+     * @return zip code
+     */
+    public int getZipcodeKey() {
+        return zipcodeKey;
+    }
+
     /**
      * Returns the donation amount.
      *
@@ -84,6 +163,28 @@ public class DonationEntry {
         return amount;
     }
 
+    /**
+     * Returns the donation amount in millionths of a dollar, which is added to the cumulative donation.
+     *
+     * @return donation amount in millionths of a dollar
+     */
+    public long getMicros() {
+        return micros;
+    }
+
+    /**
+     * Converts the amount to the nearest whole number of millionths of a dollar.
+     * The amounts with at most six fractional digits are converted exactly, as long as they have at most 15 digits.
+     * The amounts above {@link #MAX_AMOUNT}, including the infinity, are clamped to it, so that a few of them
+     * cannot overflow the cumulative donation, see {@link DonationBucket#addDonation(double, long)}.
+     *
+     * @param amount non-negative amount
+     * @return amount in millionths of a dollar, at most {@code MAX_AMOUNT * 10^6}
+     */
+    static long toMicros(double amount) {
+        return Math.round(Math.min(amount, MAX_AMOUNT) * 1e6);
+    }
+
     /**
      * Returns year in which the donation was made.
      *
@@ -94,12 +195,22 @@ public class DonationEntry {
     }
 
     /**
-     * Returns date of donation.
+     * Returns year in which the donation was made encoded as int.
+     * Years that consist of 4 digits are encoded by their value.
+     *
+     * @return donation year
+     */
+    public int getYearKey() {
+        return encodeYear(year.charAt(0), PackedDate.year(date));
+    }
+
+    /**
+     * Returns date of donation packed as yyyymmdd, see {@link PackedDate}.
      *
      * @return date
      */
-    public Calendar getDate() {
-        return (Calendar) date.clone();
+    public int getDate() {
+        return date;
     }
 
     /**
@@ -108,22 +219,44 @@ public class DonationEntry {
      * @return true or false
      */
     public boolean isValid() {
-        return is_valid;
+        return rejection == VALID;
     }
 
     /**
-     * Returns {@code true} if the donation entry passes all the validity checks.
+     * Returns the first validation rule that the entry fails, e.g. {@link #INVALID_ZIPCODE}.
+     *
+     * @return validation rule, or {@link #VALID} if the entry is valid
+     */
+    int getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Runs the validity checks in order and returns the first one that the donation entry fails.
      *
      * @param fields all fields of the entry
-     * @return true or false
+     * @return validation rule, or VALID if the entry passes all the checks
      */
-    private boolean isValid(String[] fields) {
-        return (checkIfValidOtherID(fields[OTHER_ID_POSITION])
-                && checkIfValidRecipient(fields[FILER_ID_POSITION])
-                && checkIfValidDonorName(fields[DONOR_NAME_POSITION])
-                && checkIfValidZipcode(fields[ZIPCODE_POSITION])
-                && checkIfValidAmount(fields[AMOUNT_POSITION])
-                && checkIfValidDate(fields[DATE_POSITION]));
+    private int rejection(String[] fields) {
+        if (!checkIfValidOtherID(fields[OTHER_ID_POSITION])) {
+            return INVALID_OTHER_ID;
+        }
+        if (!checkIfValidRecipient(fields[FILER_ID_POSITION])) {
+            return INVALID_RECIPIENT;
+        }
+        if (!checkIfValidDonorName(fields[DONOR_NAME_POSITION])) {
+            return INVALID_DONOR_NAME;
+        }
+        if (!checkIfValidZipcode(fields[ZIPCODE_POSITION])) {
+            return INVALID_ZIPCODE;
+        }
+        if (!checkIfValidAmount(fields[AMOUNT_POSITION])) {
+            return INVALID_AMOUNT;
+        }
+        if (!checkIfValidDate(fields[DATE_POSITION])) {
+            return INVALID_DATE;
+        }
+        return VALID;
     }
 
     /**
@@ -164,20 +297,7 @@ public class DonationEntry {
      */
     private boolean checkIfValidDonorName(String name) {
         donorName = name;
-        String[] names = name.split(", ", -1);
-        if (names.length != 2) {
-            return false;
-        }
-
-        for (String n : names) {
-            for (String w : n.split(" ", -1)) {
-                if ("".equals(w) || !w.matches("[a-zA-Z]+")) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
+        return DonorNameValidator.isValid(name);
     }
 
     /**
@@ -189,7 +309,9 @@ public class DonationEntry {
     private boolean checkIfValidZipcode(String zipCode) {
         try {
             zipcode = zipCode.substring(0, ZIPCODE_LENGTH);
-            if (Integer.parseInt(zipcode) >= 0) {
+            int value = Integer.parseInt(zipcode);
+            if (value >= 0) {
+                zipcodeKey = encodeZipcode(zipcode.charAt(0), value);
                 return true;
             }
         } catch (Exception ignored) {
@@ -198,6 +320,57 @@ public class DonationEntry {
         return false;
     }
 
+    /**
+     * Encodes the valid zip code as int, so that distinct zip codes have distinct keys below 2^17.
+     * The 5-digit zip codes are encoded by their value, while the codes with a leading sign,
+     * i.e. "+dddd" or "-0000", are placed above them.
+     *
+     * @param firstChar first character of the zip code
+     * @param value     value of the zip code
+     * @return encoded zip code
+     */
+    static int encodeZipcode(char firstChar, int value) {
+        if (firstChar == '+') {
+            return PLUS_SIGN_ZIPCODES + value;
+        }
+        if (firstChar == '-') {
+            return MINUS_SIGN_ZIPCODES + value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the key of the zip code, see {@link #encodeZipcode(char, int)}.
+     *
+     * @param zipcode valid zip code
+     * @return encoded zip code
+     */
+    static int zipcodeKey(String zipcode) {
+        return encodeZipcode(zipcode.charAt(0), Integer.parseInt(zipcode));
+    }
+
+    /**
+     * Returns the key of the year, see {@link #encodeYear(char, int)}.
+     *
+     * @param year valid year
+     * @return encoded year
+     */
+    static int yearKey(String year) {
+        return encodeYear(year.charAt(0), Integer.parseInt(year));
+    }
+
+    /**
+     * Encodes the valid year as int, so that distinct years have distinct keys below 2^14.
+     * The 4-digit years are encoded by their value, while the years with a leading plus sign are placed above them.
+     *
+     * @param firstChar first character of the year
+     * @param value     value of the year
+     * @return encoded year
+     */
+    static int encodeYear(char firstChar, int value) {
+        return firstChar == '+' ? PLUS_SIGN_YEARS + value : value;
+    }
+
     /**
      * Returns {@code true} if donation amount is a valid positive number.
      *
@@ -211,6 +384,7 @@ public class DonationEntry {
         try {
             amount = Double.parseDouble(amountString);
             if (amount >= 0.0) {
+                micros = toMicros(amount);
                 return true;
             }
         } catch (Exception ignored) {
@@ -236,14 +410,11 @@ public class DonationEntry {
             int mm = Integer.parseInt(dateString.substring(0, 2));
             int dd = Integer.parseInt(dateString.substring(2, 4));
 
-            date = Calendar.getInstance();
-            date.setLenient(false);
-            date.set(yyyy, mm - 1, dd);
-            date.getTime();                 // throws exception if day or month values are out of their appropriate ranges
+            date = PackedDate.pack(yyyy, mm, dd);
         } catch (Exception e) {
             return false;
         }
-        return true;
+        return date != PackedDate.INVALID;
     }
 
 }
@@ -0,0 +1,502 @@
+package donationAnalytics;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static donationAnalytics.DonationEntry.*;
+
+
+/**
+ * Byte-level parser of donation entries.
+ * Scans the raw bytes of the line for '|' delimiters, records the boundaries of the relevant fields only
+ * and validates them in place, so that the objects are created only for the entries that pass validation.
+ * The result is identical to the one of {@link DonationEntry#DonationEntry(String)}.
+ * The recipient IDs and the donor names are encoded into ints by the dictionaries, which may be shared
+ * by several parsers, and the entries refer to the single instance of each distinct string, zip code and year.
+ * If the metrics are collected, every line is timed and counted by the validation rule that rejected it.
+ * The instance is reusable, but not thread-safe.
+ */
+public class DonationEntryParser {
+
+    // the same charset is used by the FileReader to decode the input file
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    // the longest mantissa that is exactly representable as double, and the exact powers of ten
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    // the longest number of millionths of a dollar that DonationEntry.toMicros converts without the rounding error,
+    // and the factors that scale the amounts with 0 to 6 fractional digits to millionths
+    private static final int MAX_EXACT_MICRO_DIGITS = 15;
+    private static final long[] MICROS_SCALE = {1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+
+    // returned by parseIntField if the field is not a valid integer
+    private static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+
+    // boundaries [from, to) of the relevant fields in the current line
+    private int recipientFrom, recipientTo;
+    private int nameFrom, nameTo;
+    private int zipcodeFrom, zipcodeTo;
+    private int dateFrom, dateTo;
+    private int amountFrom, amountTo;
+    private int otherIdFrom, otherIdTo;
+
+    private double amount;
+    private long micros;
+    private int date, zipcodeKey;
+
+    // set if one of the numeric fields contains non-ASCII bytes and has to be decoded before parsing
+    private boolean requiresDecoding;
+
+    // validation rule that rejected the current line, see DonationEntry.getRejection
+    private int rejection;
+
+    private final StringDictionary recipients, donorNames;
+    private final ProcessingMetrics.ParserMetrics metrics;      // null if the metrics are not collected
+
+    // single instance of each zip code and year string, indexed by their int keys and grown on demand
+    private String[] zipcodes = new String[0], years = new String[0];
+
+
+    /**
+     * Initializes the parser with its own dictionaries.
+     */
+    public DonationEntryParser() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    /**
+     * Initializes the parser that encodes the keys with the given dictionaries, see {@link DonationsDatabase#newParser()}.
+     *
+     * @param recipients dictionary of the recipient IDs
+     * @param donorNames dictionary of the donor names
+     */
+    public DonationEntryParser(StringDictionary recipients, StringDictionary donorNames) {
+        this(recipients, donorNames, null);
+    }
+
+    /**
+     * Initializes the parser that encodes the keys with the given dictionaries and records every line
+     * into the metrics, see {@link DonationsDatabase#newParser(ProcessingMetrics.ParserMetrics)}.
+     *
+     * @param recipients dictionary of the recipient IDs
+     * @param donorNames dictionary of the donor names
+     * @param metrics    metrics of this parser, or {@code null} if they are not collected
+     */
+    public DonationEntryParser(StringDictionary recipients, StringDictionary donorNames,
+                               ProcessingMetrics.ParserMetrics metrics) {
+        this.recipients = recipients;
+        this.donorNames = donorNames;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Parses the donation entry stored in {@code buf[from, to)}, without the line terminator.
+     *
+     * @param buf  buffer with the line
+     * @param from index of the first byte of the line
+     * @param to   index following the last byte of the line
+     * @return valid donation entry, or {@code null} if the entry is not valid
+     */
+    public DonationEntry parse(byte[] buf, int from, int to) {
+        if (metrics == null) {
+            return parseLine(buf, from, to);
+        }
+
+        long start = System.nanoTime();
+        DonationEntry entry = parseLine(buf, from, to);
+        metrics.record(rejection, System.nanoTime() - start);
+        return entry;
+    }
+
+    /**
+     * Returns the first validation rule that the last parsed line failed, see {@link DonationEntry#getRejection()}.
+     *
+     * @return validation rule, or {@link DonationEntry#VALID} if the line was accepted
+     */
+    int getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Parses the donation entry stored in {@code buf[from, to)} and sets the validation rule that rejected it.
+     *
+     * @param buf  buffer with the line
+     * @param from index of the first byte of the line
+     * @param to   index following the last byte of the line
+     * @return valid donation entry, or {@code null} if the entry is not valid
+     */
+    private DonationEntry parseLine(byte[] buf, int from, int to) {
+        if (!splitFields(buf, from, to)) {
+            rejection = INVALID_FIELD_COUNT;
+            return null;
+        }
+
+        requiresDecoding = false;
+        rejection = validate(buf);
+
+        if (requiresDecoding) {
+            // rare case, fall back to the String-based parser
+            DonationEntry entry = new DonationEntry(new String(buf, from, to - from, CHARSET));
+            rejection = entry.getRejection();
+            if (!entry.isValid()) {
+                return null;
+            }
+            int recipientKey = recipients.idOf(entry.getRecipientID());
+            int donorKey = donorNames.idOf(entry.getDonorName());
+            return new DonationEntry(recipients.string(recipientKey), recipientKey,
+                    donorNames.string(donorKey), donorKey,
+                    entry.getZipcode(), entry.getZipcodeKey(), entry.getYear(), entry.getAmount(), entry.getMicros(), entry.getDate());
+        }
+        if (rejection != VALID) {
+            return null;
+        }
+
+        int recipientKey = recipients.idOf(buf, recipientFrom, recipientTo);
+        int donorKey = donorNames.idOf(buf, nameFrom, nameTo);
+        return new DonationEntry(recipients.string(recipientKey), recipientKey,
+                donorNames.string(donorKey), donorKey,
+                zipcode(buf), zipcodeKey, year(buf), amount, micros, date);
+    }
+
+    /**
+     * Finds the boundaries of the relevant fields.
+     * Returns {@code true} if the line has the expected number of fields.
+     *
+     * @param buf  buffer with the line
+     * @param from index of the first byte of the line
+     * @param to   index following the last byte of the line
+     * @return true or false
+     */
+    private boolean splitFields(byte[] buf, int from, int to) {
+        int field = 0;
+        int fieldFrom = from;
+
+        for (int i = from; i <= to; i++) {
+            if (i < to && buf[i] != '|') {
+                continue;
+            }
+
+            switch (field) {
+                case FILER_ID_POSITION:
+                    recipientFrom = fieldFrom;
+                    recipientTo = i;
+                    break;
+                case DONOR_NAME_POSITION:
+                    nameFrom = fieldFrom;
+                    nameTo = i;
+                    break;
+                case ZIPCODE_POSITION:
+                    zipcodeFrom = fieldFrom;
+                    zipcodeTo = i;
+                    break;
+                case DATE_POSITION:
+                    dateFrom = fieldFrom;
+                    dateTo = i;
+                    break;
+                case AMOUNT_POSITION:
+                    amountFrom = fieldFrom;
+                    amountTo = i;
+                    break;
+                case OTHER_ID_POSITION:
+                    otherIdFrom = fieldFrom;
+                    otherIdTo = i;
+                    break;
+                default:
+                    if (field >= NUMBER_OF_FIELDS) {
+                        return false;
+                    }
+            }
+
+            field++;
+            fieldFrom = i + 1;
+        }
+
+        return field == NUMBER_OF_FIELDS;
+    }
+
+    /**
+     * Runs the validity checks of the fields in order and returns the first one that the entry fails.
+     * Stops at the numeric field that has to be decoded, see {@link #fallBack()}.
+     *
+     * @param buf buffer with the line
+     * @return validation rule, see {@link DonationEntry#getRejection()}, or VALID if the entry passes all the checks
+     */
+    private int validate(byte[] buf) {
+        if (!checkIfValidOtherID()) {
+            return INVALID_OTHER_ID;
+        }
+        if (!checkIfValidRecipient()) {
+            return INVALID_RECIPIENT;
+        }
+        if (!checkIfValidDonorName(buf)) {
+            return INVALID_DONOR_NAME;
+        }
+        if (!checkIfValidZipcode(buf)) {
+            return INVALID_ZIPCODE;
+        }
+        if (!checkIfValidAmount(buf)) {
+            return INVALID_AMOUNT;
+        }
+        if (!checkIfValidDate(buf)) {
+            return INVALID_DATE;
+        }
+        return VALID;
+    }
+
+    /**
+     * Returns {@code true} if Other ID is valid, i.e. empty.
+     *
+     * @return true or false
+     */
+    private boolean checkIfValidOtherID() {
+        return otherIdFrom == otherIdTo;
+    }
+
+    /**
+     * Returns {@code true} if recipient is valid, i.e. the ID is non-empty sequence of characters.
+     *
+     * @return true or false
+     */
+    private boolean checkIfValidRecipient() {
+        return recipientFrom < recipientTo;
+    }
+
+    /**
+     * Returns {@code true} if donor name is valid, see {@link DonorNameValidator} for the rules.
+     *
+     * @param buf buffer with the line
+     * @return true or false
+     */
+    private boolean checkIfValidDonorName(byte[] buf) {
+        return DonorNameValidator.isValid(buf, nameFrom, nameTo);
+    }
+
+    /**
+     * Returns {@code true} if zip code is a valid 5-digit number.
+     * Follows the rules of {@link Integer#parseInt(String)}, which accepts a leading sign.
+     *
+     * @param buf buffer with the line
+     * @return true or false
+     */
+    private boolean checkIfValidZipcode(byte[] buf) {
+        if (isNotAscii(buf, zipcodeFrom, zipcodeTo)) {
+            return fallBack();
+        }
+        if (zipcodeTo - zipcodeFrom < ZIPCODE_LENGTH) {
+            return false;
+        }
+
+        int value = parseIntField(buf, zipcodeFrom, zipcodeFrom + ZIPCODE_LENGTH);
+        if (value == NOT_A_NUMBER || value < 0) {
+            return false;
+        }
+
+        zipcodeKey = DonationEntry.encodeZipcode((char) buf[zipcodeFrom], value);
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if donation amount is a valid positive number.
+     * Plain decimal numbers are converted in place, other formats are handled by {@link Double#parseDouble(String)}.
+     * The amount in millionths of a dollar is taken from the digits without floating-point arithmetic
+     * if it has at most six fractional digits, and is rounded from the parsed amount otherwise.
+     *
+     * @param buf buffer with the line
+     * @return true or false
+     */
+    private boolean checkIfValidAmount(byte[] buf) {
+        if (amountFrom == amountTo) {
+            return false;
+        }
+        if (isNotAscii(buf, amountFrom, amountTo)) {
+            return fallBack();
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean hasPoint = false;
+        boolean isPlain = true;
+
+        for (int i = amountFrom; i < amountTo && isPlain; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (hasPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !hasPoint) {
+                hasPoint = true;
+            } else {
+                isPlain = false;
+            }
+        }
+
+        if (isPlain && digits > 0 && digits <= MAX_EXACT_DIGITS) {
+            // both operands are exact, so the quotient is correctly rounded just as with Double.parseDouble
+            amount = mantissa / POWERS_OF_TEN[fractionDigits];
+            micros = fractionDigits < MICROS_SCALE.length && digits + 6 - fractionDigits <= MAX_EXACT_MICRO_DIGITS
+                    ? mantissa * MICROS_SCALE[fractionDigits] : DonationEntry.toMicros(amount);
+            return true;
+        }
+
+        try {
+            amount = Double.parseDouble(ascii(buf, amountFrom, amountTo));
+            if (amount >= 0.0) {
+                micros = DonationEntry.toMicros(amount);
+                return true;
+            }
+        } catch (NumberFormatException ignored) {
+            // ignored
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if date field represents a valid date in "MMDDYYYY" format.
+     *
+     * @param buf buffer with the line
+     * @return true or false
+     */
+    private boolean checkIfValidDate(byte[] buf) {
+        if (isNotAscii(buf, dateFrom, dateTo)) {
+            return fallBack();
+        }
+        if (dateTo - dateFrom != 8) {
+            return false;
+        }
+
+        int yyyy = parseIntField(buf, dateFrom + 4, dateFrom + 8);
+        int mm = parseIntField(buf, dateFrom, dateFrom + 2);
+        int dd = parseIntField(buf, dateFrom + 2, dateFrom + 4);
+        if (yyyy == NOT_A_NUMBER || mm == NOT_A_NUMBER || dd == NOT_A_NUMBER) {
+            return false;
+        }
+
+        date = PackedDate.pack(yyyy, mm, dd);
+        return date != PackedDate.INVALID;
+    }
+
+    /**
+     * Marks the entry as one that has to be parsed by the String-based parser.
+     *
+     * @return false, so that validation stops
+     */
+    private boolean fallBack() {
+        requiresDecoding = true;
+        return false;
+    }
+
+    /**
+     * Parses the ASCII integer in {@code buf[from, to)} with the same rules as {@link Integer#parseInt(String)},
+     * assuming that the field is shorter than 10 bytes.
+     *
+     * @param buf  buffer with the line
+     * @param from index of the first byte of the field
+     * @param to   index following the last byte of the field
+     * @return parsed value or NOT_A_NUMBER
+     */
+    private static int parseIntField(byte[] buf, int from, int to) {
+        if (from == to) {
+            return NOT_A_NUMBER;
+        }
+
+        boolean negative = buf[from] == '-';
+        int i = (negative || buf[from] == '+') ? from + 1 : from;
+        if (i == to) {
+            return NOT_A_NUMBER;
+        }
+
+        int value = 0;
+        for (; i < to; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + (b - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns {@code true} if {@code buf[from, to)} contains at least one non-ASCII byte.
+     *
+     * @param buf  buffer with the line
+     * @param from index of the first byte of the field
+     * @param to   index following the last byte of the field
+     * @return true or false
+     */
+    private static boolean isNotAscii(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the single instance of the zip code string of the current line.
+     *
+     * @param buf buffer with the line
+     * @return zip code
+     */
+    private String zipcode(byte[] buf) {
+        if (zipcodeKey >= zipcodes.length) {
+            zipcodes = grow(zipcodes, zipcodeKey);
+        }
+        String zipcode = zipcodes[zipcodeKey];
+        if (zipcode == null) {
+            zipcode = zipcodes[zipcodeKey] = ascii(buf, zipcodeFrom, zipcodeFrom + ZIPCODE_LENGTH);
+        }
+        return zipcode;
+    }
+
+    /**
+     * Returns the single instance of the year string of the current line.
+     *
+     * @param buf buffer with the line
+     * @return year
+     */
+    private String year(byte[] buf) {
+        int yearKey = DonationEntry.encodeYear((char) buf[dateFrom + 4], PackedDate.year(date));
+        if (yearKey >= years.length) {
+            years = grow(years, yearKey);
+        }
+        String year = years[yearKey];
+        if (year == null) {
+            year = years[yearKey] = ascii(buf, dateFrom + 4, dateTo);
+        }
+        return year;
+    }
+
+    /**
+     * Grows the array of the strings indexed by their keys, so that it contains the given key.
+     *
+     * @param strings strings by key
+     * @param key     key that does not fit into the array
+     * @return larger copy of the array
+     */
+    private static String[] grow(String[] strings, int key) {
+        return Arrays.copyOf(strings, Math.max(key + 1, 2 * strings.length));
+    }
+
+    /**
+     * Creates the String from the ASCII bytes.
+     *
+     * @param buf  buffer with the line
+     * @param from index of the first byte of the field
+     * @param to   index following the last byte of the field
+     * @return string
+     */
+    private static String ascii(byte[] buf, int from, int to) {
+        return new String(buf, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+}
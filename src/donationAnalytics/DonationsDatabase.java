@@ -1,6 +1,8 @@
 package donationAnalytics;
 
-import java.util.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 
 
 /**
@@ -8,53 +10,113 @@ import java.util.*;
  */
 public class DonationsDatabase {
 
+    // dense int ids of the recipient IDs and the donor names, which are used as keys by the index and the registry
+    private final StringDictionary recipients = new StringDictionary();
+    private final StringDictionary donorNames = new StringDictionary();
+
     // set of all unique donors
-    private final Map<Tuple<String, String>, Calendar> donors;
+    private final DonorRegistry donors;
 
-    // data structures that contain all the donations from repeat donors and cumulative donations, respectively
-    // data is indexed by the combination of keys: recipient ID -> zip code -> year
-    private final MapOfMaps<OrderedTree<Double>> fromRepeatDonors;
-    private final MapOfMaps<Double> cumulative;
+    // buckets that contain all the donations from repeat donors and cumulative donations
+    // data is indexed by the composite key: recipient ID, zip code, year
+    private final BucketIndex fromRepeatDonors;
 
 
     /**
-     * Initializes empty data structures.
+     * Initializes empty data structures, which store the donation amounts in the order-statistic trees
+     * that compute any percentile.
      */
     public DonationsDatabase() {
-        donors = new TreeMap<>();
-        fromRepeatDonors = new MapOfMaps<>();
-        cumulative = new MapOfMaps<>();
+        this(DoubleOrderedTree::new);
+    }
+
+    /**
+     * Initializes empty data structures.
+     *
+     * @param engines factory of the percentile engines that store the donation amounts of each bucket
+     */
+    public DonationsDatabase(Supplier<PercentileEngine> engines) {
+        donors = new DonorRegistry();
+        fromRepeatDonors = new BucketIndex(engines);
     }
 
 
     /**
-     * Processes single donation entry and updates the ordered tree of all donations
-     * and the cumulative donation for a given combination of keys: recipient ID -> zip code -> year.
+     * Returns the new parser of the donation entries, which encodes the recipient IDs and the donor names
+     * with the dictionaries of this database. The parsers are not thread-safe, but several parsers
+     * may be used by different threads, since the dictionaries are shared safely.
+     *
+     * @return parser
+     */
+    public DonationEntryParser newParser() {
+        return new DonationEntryParser(recipients, donorNames);
+    }
+
+    /**
+     * Returns the new parser of the donation entries, see {@link #newParser()}, which records every line
+     * into the given metrics.
+     *
+     * @param metrics metrics of the parser, see {@link ProcessingMetrics#newParserMetrics()}
+     * @return parser
+     */
+    public DonationEntryParser newParser(ProcessingMetrics.ParserMetrics metrics) {
+        return new DonationEntryParser(recipients, donorNames, metrics);
+    }
+
+    /**
+     * Returns the number of buckets. May be called from any thread, which may see a slightly stale value.
      *
-     * @param entry donation entry
+     * @return number of buckets
      */
-    public void addDonation(DonationEntry entry) {
-        String recipient = entry.getRecipientID();          // key 1 - recipient ID
-        String zipcode = entry.getZipcode();              // key 2 - zip code
-        String year = entry.getYear();                 // key 3 - year
+    public int getBucketCount() {
+        return fromRepeatDonors.size();
+    }
 
-        Double amount = entry.getAmount();                  // donation amount to add to collection of past donations and to update cumulative  
+    /**
+     * Returns the number of distinct donors. May be called from any thread, which may see a slightly stale value.
+     *
+     * @return number of donors
+     */
+    public int getDonorCount() {
+        return donors.size();
+    }
+
+    /**
+     * Returns the dictionary of the recipient IDs.
+     *
+     * @return dictionary
+     */
+    public StringDictionary getRecipients() {
+        return recipients;
+    }
 
-        // insert amount in the OrderedTree
-        fromRepeatDonors.putIfAbsent(recipient, zipcode, year, new OrderedTree<>());
-        OrderedTree<Double> tree = fromRepeatDonors.get(recipient, zipcode, year);
-        tree.put(amount);
+    /**
+     * Returns the dictionary of the donor names.
+     *
+     * @return dictionary
+     */
+    public StringDictionary getDonorNames() {
+        return donorNames;
+    }
 
-        // update cumulative
-        cumulative.putIfAbsent(recipient, zipcode, year, 0.0);
-        Double currentSum = cumulative.get(recipient, zipcode, year);
-        cumulative.put(recipient, zipcode, year, currentSum + amount);
+    /**
+     * Processes single donation entry and updates the ordered tree of all donations
+     * and the cumulative donation for a given combination of keys: recipient ID, zip code, year.
+     * The bucket is resolved by a single lookup in the index.
+     *
+     * @param entry donation entry created by the parser of this database, see {@link #newParser()}
+     * @return bucket that contains the donation, which provides the statistics for the combination of keys
+     */
+    public DonationBucket addDonation(DonationEntry entry) {
+        DonationBucket bucket = fromRepeatDonors.getOrCreate(entry.getRecipientKey(), entry.getZipcodeKey(), entry.getYearKey());
+        bucket.addDonation(entry.getAmount(), entry.getMicros());
+        return bucket;
     }
 
     /**
      * Returns the amount that corresponds to the n-th percentile.
-     * Guaranteed O(log(N)) performance due to O(1) lookup time in the HashMaps
-     * and O(log(N)) time for the operations with the RedBlackBST.
+     * Guaranteed O(log(N)) performance due to O(1) lookup time in the index
+     * and at most O(log(N)) time for the operations with the percentile engine.
      *
      * @param recipient  key1 recipient ID
      * @param zipcode    key2 zip code
@@ -63,16 +125,12 @@ public class DonationsDatabase {
      * @return value corresponding to the percentile
      */
     public int findPercentile(String recipient, String zipcode, String year, int percentile) {
-        OrderedTree<Double> amounts = fromRepeatDonors.get(recipient, zipcode, year);
-
-        // percentile is computed using the nearest-rank method
-        int percentileRank = (int) Math.ceil(percentile * amounts.size() / 100.0);
-        return (int) Math.round(amounts.selectKMin(percentileRank - 1));
+        return findBucket(recipient, zipcode, year).findPercentile(percentile);
     }
 
     /**
      * Returns the cumulative donation.
-     * Constant time performance due to O(1) lookup time in HashMaps.
+     * Constant time performance due to O(1) lookup time in the index.
      *
      * @param recipient key1 recipient ID
      * @param zipcode   key2 zip code
@@ -80,13 +138,12 @@ public class DonationsDatabase {
      * @return cumulative donation
      */
     public int findCumulative(String recipient, String zipcode, String year) {
-        Double total = cumulative.get(recipient, zipcode, year);
-        return (int) Math.round(total);
+        return findBucket(recipient, zipcode, year).findCumulative();
     }
 
     /**
      * Returns the total transaction count.
-     * Constant time performance due to O(1) lookup time in HashMaps and O(1) lookup time of RedBlackBST.size().
+     * Constant time performance due to O(1) lookup time in the index.
      *
      * @param recipient key1 recipient ID
      * @param zipcode   key2 zip code
@@ -94,34 +151,116 @@ public class DonationsDatabase {
      * @return transaction count
      */
     public int findTransactionCount(String recipient, String zipcode, String year) {
-        return fromRepeatDonors.get(recipient, zipcode, year).size();
+        return findBucket(recipient, zipcode, year).findTransactionCount();
+    }
+
+    /**
+     * Returns the bucket for a given combination of keys.
+     *
+     * @param recipient key1 recipient ID
+     * @param zipcode   key2 zip code
+     * @param year      key 3 year
+     * @return bucket, or {@code null} if there were no donations from repeat donors
+     */
+    public DonationBucket findBucket(String recipient, String zipcode, String year) {
+        int recipientKey = recipients.find(recipient);
+        return recipientKey < 0 ? null
+                : fromRepeatDonors.get(recipientKey, DonationEntry.zipcodeKey(zipcode), DonationEntry.yearKey(year));
+    }
+
+    /**
+     * Returns the statistics for a given combination of keys and any percentile. Unlike the other methods,
+     * this one may be called from any thread while the donations are added by the processing thread:
+     * the lookup and the statistics are read optimistically and retried if they were modified in the meantime,
+     * so the queries never block the processing. The percentile engines must support any percentile
+     * and must not modify themselves when a percentile is computed, e.g. {@link DoubleOrderedTree}.
+     *
+     * @param recipient  key1 recipient ID
+     * @param zipcode    key2 5-digit zip code
+     * @param year       key 3 4-digit year
+     * @param percentile percentile, 1 <= p <= 100
+     * @return consistent statistics, or {@code null} if there were no donations from repeat donors
+     */
+    public BucketStatistics queryStatistics(String recipient, String zipcode, String year, int percentile) {
+        if (percentile < 1 || percentile > 100) {
+            throw new IllegalArgumentException("percentile is invalid: " + percentile);
+        }
+        int recipientKey = recipients.find(recipient);
+        if (recipientKey < 0) {
+            return null;
+        }
+        DonationBucket bucket = fromRepeatDonors.getConcurrently(recipientKey,
+                DonationEntry.zipcodeKey(zipcode), DonationEntry.yearKey(year));
+        return bucket == null ? null : bucket.readStatistics(percentile);
     }
 
     /**
-     * Attempts to add new donor into the map. If the donor is already present in the map with same or earlier year,
+     * Attempts to add new donor into the registry. If the donor is already present in the registry with same or earlier year,
      * then it is a repeat donor, if with later date - then it's not a repeat donor, but the donation date is updated;
      * otherwise the donor is added.
      *
-     * @param donorName donor name and zip code to uniquely identify a donor
+     * @param donorName    donor name key and zip code to uniquely identify a donor, see {@link DonationEntry#getDonorKey()}
+     * @param donorZipCode donor zip code, see {@link DonationEntry#getZipcodeKey()}
+     * @param laterDate    date of donation packed as yyyymmdd
      * @return {@code true} if the donor is repeat donor, {@code false} if the donor is new
      */
-    public boolean ifRepeatDonor(String donorName, String donorZipCode, Calendar laterDate) {
-        Tuple<String, String> donor = new Tuple<>(donorName, donorZipCode);
-
-        if (donors.containsKey(donor)) {
-            Calendar previousdate = donors.get(donor);
+    public boolean ifRepeatDonor(int donorName, int donorZipCode, int laterDate) {
+        return donors.ifRepeatDonor(donorName, donorZipCode, PackedDate.year(laterDate));
+    }
 
-            // if new entry has same or later year, then it is a repeat donor 
-            if (previousdate.get(Calendar.YEAR) <= laterDate.get(Calendar.YEAR)) {
-                return true;
-            }
+    /**
+     * Saves the complete state of the database into the snapshot file, see {@link DatabaseSnapshot}.
+     *
+     * @param path          path to the snapshot file
+     * @param inputPosition position in the followed input file after the processed lines, or 0 if the input
+     *                      is not followed, so that the next input file is read from the beginning
+     * @throws IOException if the file cannot be written
+     */
+    public void saveSnapshot(Path path, long inputPosition) throws IOException {
+        DatabaseSnapshot.save(this, inputPosition, path);
+    }
 
-            // otherwise it is not a repeat donor, and the entry date is updated
-            donors.remove(donor);
+    /**
+     * Restores the state of the empty database from the snapshot file, so that the new donations continue
+     * the donations processed before the snapshot was saved.
+     * The percentile engines must be of the same kind as when the snapshot was saved, exact or approximate.
+     *
+     * @param path path to the snapshot file
+     * @return position in the followed input file after the lines processed before the snapshot was saved,
+     * or 0 if the input was not followed
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public long loadSnapshot(Path path) throws IOException {
+        if (recipients.size() > 0 || donorNames.size() > 0 || donors.size() > 0 || fromRepeatDonors.size() > 0) {
+            throw new IllegalStateException("database is not empty");
         }
+        return DatabaseSnapshot.load(this, path);
+    }
 
-        donors.put(donor, laterDate);
-        return false;
+    /**
+     * Writes the dictionaries, the donors and the buckets into the snapshot.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput out) throws IOException {
+        recipients.writeTo(out);
+        donorNames.writeTo(out);
+        donors.writeTo(out);
+        fromRepeatDonors.writeTo(out);
+    }
+
+    /**
+     * Restores the dictionaries, the donors and the buckets from the snapshot.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        recipients.readFrom(in);
+        donorNames.readFrom(in);
+        donors.readFrom(in);
+        fromRepeatDonors.readFrom(in);
     }
 
 }
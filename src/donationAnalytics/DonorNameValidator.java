@@ -0,0 +1,80 @@
+package donationAnalytics;
+
+
+/**
+ * Single-pass validator of donor names, which does not allocate and does not use regular expressions.
+ * The valid name consists of the last name and the first name separated by a comma followed by one whitespace.
+ * Each of the names consists of one or more words made only of letters {@code [a-zA-Z]},
+ * with exactly one whitespace between the words, and without leading or trailing whitespaces.
+ */
+final class DonorNameValidator {
+
+    private DonorNameValidator() {
+    }
+
+    /**
+     * Returns {@code true} if the donor name is valid.
+     *
+     * @param name donor name
+     * @return true or false
+     */
+    static boolean isValid(CharSequence name) {
+        int length = name.length();
+        boolean hasSeparator = false;
+        boolean inWord = false;             // true if the previous character is a letter
+
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (isLetter(c)) {
+                inWord = true;
+            } else if (c == ' ' && inWord) {
+                inWord = false;
+            } else if (c == ',' && inWord && !hasSeparator && i + 1 < length && name.charAt(i + 1) == ' ') {
+                hasSeparator = true;
+                inWord = false;
+                i++;                        // skip the whitespace that follows the comma
+            } else {
+                return false;
+            }
+        }
+
+        return hasSeparator && inWord;
+    }
+
+    /**
+     * Returns {@code true} if the donor name stored in {@code buf[from, to)} is valid.
+     * Non-ASCII bytes are never letters, so the name that contains them is not valid.
+     *
+     * @param buf  buffer with the name
+     * @param from index of the first byte of the name
+     * @param to   index following the last byte of the name
+     * @return true or false
+     */
+    static boolean isValid(byte[] buf, int from, int to) {
+        boolean hasSeparator = false;
+        boolean inWord = false;             // true if the previous byte is a letter
+
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (isLetter(b)) {
+                inWord = true;
+            } else if (b == ' ' && inWord) {
+                inWord = false;
+            } else if (b == ',' && inWord && !hasSeparator && i + 1 < to && buf[i + 1] == ' ') {
+                hasSeparator = true;
+                inWord = false;
+                i++;                        // skip the whitespace that follows the comma
+            } else {
+                return false;
+            }
+        }
+
+        return hasSeparator && inWord;
+    }
+
+    // is c one of [a-zA-Z]
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+}
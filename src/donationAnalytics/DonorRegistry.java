@@ -0,0 +1,176 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Set of all unique donors, identified by their name and zip code, together with the year of their earliest donation.
+ * Implemented as an open-addressing hash table with linear probing, which stores the donors in parallel arrays:
+ * the name is stored as its id in the dictionary of the donor names, the zip code as int and the year as short,
+ * so no objects are allocated per lookup or per donor, and the donors are compared as ints.
+ * Lookup and insertion take amortized O(1) time.
+ */
+public class DonorRegistry {
+
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    // the table is resized when it is filled by more than 3/4
+    private static final int MAX_LOAD_NUMERATOR = 3;
+    private static final int MAX_LOAD_DENOMINATOR = 4;
+
+    private static final int EMPTY = -1;
+
+    private int[] names;                // ids of the names, EMPTY marks an empty slot
+    private int[] zipcodes;
+    private short[] years;
+
+    private int size;
+    private int mask;                   // capacity - 1, capacity is a power of 2
+
+
+    /**
+     * Initializes empty registry.
+     */
+    public DonorRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes empty registry that can hold the expected number of donors without resizing.
+     *
+     * @param expectedDonors expected number of donors
+     */
+    public DonorRegistry(int expectedDonors) {
+        int capacity = Integer.highestOneBit(Math.max(expectedDonors, 2) * MAX_LOAD_DENOMINATOR / MAX_LOAD_NUMERATOR) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Registers the donation of the donor made in the given year.
+     * If the donor is already present with same or earlier year, then it is a repeat donor;
+     * if with later year - then it's not a repeat donor, but the year is updated;
+     * otherwise the donor is added.
+     *
+     * @param name    donor name, see {@link DonationEntry#getDonorKey()}
+     * @param zipcode donor zip code, see {@link DonationEntry#getZipcodeKey()}
+     * @param year    year of donation
+     * @return {@code true} if the donor is repeat donor, {@code false} if the donor is new
+     */
+    public boolean ifRepeatDonor(int name, int zipcode, int year) {
+        int i = hash(name, zipcode) & mask;
+
+        for (int n = names[i]; n != EMPTY; n = names[i]) {
+            if (n == name && zipcodes[i] == zipcode) {
+                if (years[i] <= year) {
+                    return true;
+                }
+                years[i] = (short) year;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        names[i] = name;
+        zipcodes[i] = zipcode;
+        years[i] = (short) year;
+        if (++size * MAX_LOAD_DENOMINATOR > names.length * MAX_LOAD_NUMERATOR) {
+            resize();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of unique donors.
+     *
+     * @return number of donors
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes all donors with the years of their earliest donations into the snapshot.
+     * The names are written as ids, the dictionary of the names is written separately.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != EMPTY) {
+                out.writeInt(names[i]);
+                out.writeInt(zipcodes[i]);
+                out.writeShort(years[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds the donors from the snapshot to the empty registry.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        for (int n = DatabaseSnapshot.readCount(in); n > 0; n--) {
+            int name = in.readInt();
+            int zipcode = in.readInt();
+            ifRepeatDonor(name, zipcode, in.readShort());
+        }
+    }
+
+    /**
+     * Doubles the capacity of the table and reinserts all donors.
+     */
+    private void resize() {
+        int[] oldNames = names;
+        int[] oldZipcodes = zipcodes;
+        short[] oldYears = years;
+
+        allocate(oldNames.length * 2);
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] == EMPTY) {
+                continue;
+            }
+
+            int i = hash(oldNames[j], oldZipcodes[j]) & mask;
+            while (names[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            names[i] = oldNames[j];
+            zipcodes[i] = oldZipcodes[j];
+            years[i] = oldYears[j];
+        }
+    }
+
+    /**
+     * Allocates empty table of the given capacity.
+     *
+     * @param capacity power of 2
+     */
+    private void allocate(int capacity) {
+        names = new int[capacity];
+        Arrays.fill(names, EMPTY);
+        zipcodes = new int[capacity];
+        years = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the well-mixed hash of the donor, so that linear probing does not form long clusters.
+     *
+     * @param name    id of donor name
+     * @param zipcode donor zip code
+     * @return hash
+     */
+    private static int hash(int name, int zipcode) {
+        int h = name * 31 + zipcode;
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,480 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+
+/**
+ * Order-statistic B+-tree specialized for primitive {@code double} keys, for the buckets with millions of amounts.
+ * This class allows multiple insertions of identical keys, which are stored in one entry with a duplicate count.
+ * <p>
+ * The leaves hold up to 64 distinct keys in sorted arrays, and the inner nodes hold up to 32 children together with
+ * the smallest key and the number of keys of every child, so <em>put</em> and <em>selectKMin</em> take
+ * O(log(N)) time but read a few adjacent cache lines on each of the O(log<sub>32</sub>(N)) levels, instead of
+ * one scattered node on each of the O(log<sub>2</sub>(N)) levels of a binary tree. The nodes are stored
+ * in flat arrays and referred to by index, the leaves are linked in the order of their keys, and the tree
+ * grows only by the splits of the full nodes, since the keys are never removed.
+ */
+public class DoubleBPlusTree implements PercentileEngine {
+
+    private static final int LEAF_CAPACITY = 64;        // distinct keys of the leaf
+    private static final int FANOUT = 32;               // children of the inner node
+
+    // the nodes built from the sorted keys are 3/4 full, so the next insertions split few of them
+    private static final int LEAF_FILL = LEAF_CAPACITY * 3 / 4;
+    private static final int INNER_FILL = FANOUT * 3 / 4;
+
+    // the height of B+-tree with less than 2^31 keys, whose inner nodes are at least half full
+    private static final int MAX_HEIGHT = 8;
+
+    private static final int NIL = -1;
+
+    // leaf x occupies the slots [LEAF_CAPACITY * x, LEAF_CAPACITY * x + leafLengths[x])
+    private double[] leafKeys;
+    private int[] leafCounts;                           // number of identical keys stored in the slot
+    private int[] leafLengths;
+    private int[] nextLeaves;                           // the leaf with the next larger keys, or NIL
+
+    // inner node x occupies the slots [FANOUT * x, FANOUT * x + innerLengths[x])
+    private double[] innerKeys;                         // smallest key of the child, the first one is not used
+    private int[] children;
+    private int[] childSizes;                           // number of keys in the child, including duplicates
+    private int[] innerLengths;
+
+    private int leaves;                                 // number of allocated leaves
+    private int inners;                                 // number of allocated inner nodes
+    private int root;                                   // leaf if the height is 0, inner node otherwise
+    private int height;                                 // number of inner levels
+    private int size;                                   // number of keys, including duplicates
+    private int distinct;                               // number of distinct keys
+
+    private final int[] path = new int[MAX_HEIGHT];     // inner slots visited by the current insertion
+
+
+    /**
+     * Initializes new instance of DoubleBPlusTree.
+     */
+    public DoubleBPlusTree() {
+        leafKeys = new double[LEAF_CAPACITY];
+        leafCounts = new int[LEAF_CAPACITY];
+        leafLengths = new int[1];
+        nextLeaves = new int[1];
+        innerKeys = new double[FANOUT];
+        children = new int[FANOUT];
+        childSizes = new int[FANOUT];
+        innerLengths = new int[1];
+        root = newLeaf();
+    }
+
+    /**
+     * Inserts the key into the tree.
+     *
+     * @param key the key
+     */
+    @Override
+    public void put(double key) {
+        // descend to the leaf, counting the new key in every child on the way
+        int x = root;
+        for (int level = 0; level < height; level++) {
+            int slot = FANOUT * x + childIndex(x, key);
+            childSizes[slot]++;
+            path[level] = slot;
+            x = children[slot];
+        }
+        size++;
+
+        int from = LEAF_CAPACITY * x;
+        int n = leafLengths[x];
+        int i = lowerBound(from, from + n, key);
+        if (i < from + n && leafKeys[i] == key) {
+            leafCounts[i]++;            // the shape of the tree does not change
+            return;
+        }
+        distinct++;
+
+        if (n < LEAF_CAPACITY) {
+            insertIntoLeaf(x, i - from, key);
+            return;
+        }
+
+        // split the full leaf in halves and insert the key into one of them
+        int half = LEAF_CAPACITY / 2;
+        int right = newLeaf();
+        moveLeafSlots(x, half, right);
+        if (i - from <= half) {
+            insertIntoLeaf(x, i - from, key);
+        } else {
+            insertIntoLeaf(right, i - from - half, key);
+        }
+
+        int rightSize = 0;
+        for (int j = LEAF_CAPACITY * right, end = j + leafLengths[right]; j < end; j++) {
+            rightSize += leafCounts[j];
+        }
+        insertChild(height, leafKeys[LEAF_CAPACITY * right], right, rightSize);
+    }
+
+    /**
+     * Returns the k-th smallest key in the tree, where 0 <= k < size().
+     *
+     * @param k the order statistic
+     * @return the k-th smallest key
+     * @throws IllegalArgumentException unless {@code k} is between 0 and size() - 1
+     */
+    public double selectKMin(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IllegalArgumentException("argument to selectKMin() is invalid: " + k);
+        }
+
+        // a concurrent insertion may replace the arrays and split the nodes, see DonationBucket#readStatistics,
+        // so the fields are read once, every node index is checked against the arrays before it is used,
+        // and all loops are bounded by the capacity of the node, so that the reader never loops on a torn tree
+        int[] children = this.children;
+        int[] childSizes = this.childSizes;
+        int[] innerLengths = this.innerLengths;
+        int[] leafLengths = this.leafLengths;
+        int[] leafCounts = this.leafCounts;
+        double[] leafKeys = this.leafKeys;
+        int inners = Math.min(innerLengths.length, Math.min(children.length, childSizes.length) / FANOUT);
+        int leaves = Math.min(leafLengths.length, Math.min(leafCounts.length, leafKeys.length) / LEAF_CAPACITY);
+        int x = root;
+        for (int level = Math.min(height, MAX_HEIGHT); level > 0; level--) {
+            checkNode(x, inners);
+            int i = FANOUT * x;
+            for (int last = i + Math.min(innerLengths[x], FANOUT) - 1; i < last && k >= childSizes[i]; i++) {
+                k -= childSizes[i];
+            }
+            x = children[i];
+        }
+        checkNode(x, leaves);
+        for (int i = LEAF_CAPACITY * x, end = i + Math.min(leafLengths[x], LEAF_CAPACITY); i < end; i++) {
+            if (k < leafCounts[i]) {
+                return leafKeys[i];
+            }
+            k -= leafCounts[i];
+        }
+        throw new IllegalStateException("tree is modified concurrently");
+    }
+
+    /**
+     * Returns the key that corresponds to the n-th percentile, computed using the nearest-rank method.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return key corresponding to the percentile
+     */
+    @Override
+    public double percentile(int percentile) {
+        return selectKMin(PercentileEngine.nearestRank(percentile, size()) - 1);
+    }
+
+    /**
+     * Computes the keys that correspond to several percentiles in one descent: the ranks of the percentiles
+     * are split between the children at every node, so the nodes on the common part of their paths are visited once.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the keys corresponding to the percentiles, in the same order
+     */
+    @Override
+    public void percentiles(int[] percentiles, double[] values) {
+        select(root, height, 0, percentiles, 0, percentiles.length, values);
+    }
+
+    /**
+     * Returns the size of the tree, including the duplicate keys.
+     *
+     * @return size of the tree
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the distinct keys in ascending order together with their counts into the snapshot,
+     * in the same format as {@link DoubleOrderedTree}.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(DatabaseSnapshot.EXACT_AMOUNTS);
+        out.writeInt(distinct);
+
+        // leaf 0 is the leftmost one, since the splits move the larger keys into the new leaves
+        for (int x = 0; x != NIL; x = nextLeaves[x]) {
+            for (int i = LEAF_CAPACITY * x, end = i + leafLengths[x]; i < end; i++) {
+                out.writeDouble(leafKeys[i]);
+                out.writeInt(leafCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Restores the empty tree from the distinct keys in ascending order and their counts.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        DatabaseSnapshot.readTag(in, DatabaseSnapshot.EXACT_AMOUNTS);
+
+        int n = DatabaseSnapshot.readCount(in);
+        double[] keys = new double[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = in.readDouble();
+            counts[i] = in.readInt();
+            if (counts[i] < 1 || i > 0 && !(keys[i] > keys[i - 1])) {
+                throw new StreamCorruptedException("snapshot is corrupted: amounts are not ascending");
+            }
+        }
+        load(keys, counts, n);
+    }
+
+    /**
+     * Builds the empty tree from the distinct keys in ascending order and their counts in linear time,
+     * filling the nodes level by level from the leaves up.
+     *
+     * @param keys   distinct keys in ascending order
+     * @param counts positive number of identical keys of each distinct key
+     * @param n      number of distinct keys
+     */
+    void load(double[] keys, int[] counts, int n) {
+        if (size > 0) {
+            throw new IllegalStateException("tree is not empty");
+        }
+
+        // the leaves, each of them becomes a child of the lowest inner level
+        int nodes = Math.max(1, (n + LEAF_FILL - 1) / LEAF_FILL);
+        double[] firstKeys = new double[nodes];
+        int[] ids = new int[nodes];
+        int[] sizes = new int[nodes];
+        for (int j = 0, i = 0; j < nodes; j++) {
+            int x = j == 0 ? root : newLeaf();
+            int length = Math.min(LEAF_FILL, n - i);
+            System.arraycopy(keys, i, leafKeys, LEAF_CAPACITY * x, length);
+            System.arraycopy(counts, i, leafCounts, LEAF_CAPACITY * x, length);
+            leafLengths[x] = length;
+            if (j > 0) {
+                nextLeaves[ids[j - 1]] = x;
+            }
+            firstKeys[j] = length > 0 ? keys[i] : 0;
+            ids[j] = x;
+            for (int end = i + length; i < end; i++) {
+                sizes[j] += counts[i];
+            }
+            size += sizes[j];
+        }
+        distinct = n;
+
+        // the inner levels, until a single node is left
+        while (nodes > 1) {
+            int parents = (nodes + INNER_FILL - 1) / INNER_FILL;
+            for (int j = 0; j < parents; j++) {
+                int x = newInner();
+                int from = j * INNER_FILL;
+                int length = Math.min(INNER_FILL, nodes - from);
+                System.arraycopy(firstKeys, from, innerKeys, FANOUT * x, length);
+                System.arraycopy(ids, from, children, FANOUT * x, length);
+                System.arraycopy(sizes, from, childSizes, FANOUT * x, length);
+                innerLengths[x] = length;
+
+                int parentSize = 0;
+                for (int i = from; i < from + length; i++) {
+                    parentSize += sizes[i];
+                }
+                firstKeys[j] = firstKeys[from];
+                ids[j] = x;
+                sizes[j] = parentSize;
+            }
+            nodes = parents;
+            height++;
+        }
+        root = ids[0];
+    }
+
+   /***************************************************************************
+    *  Node helper methods.
+    ***************************************************************************/
+
+    // find the keys of the percentiles lo..hi-1, whose ranks are in the node x on the given level
+    // preceded by base smaller keys
+    private void select(int x, int level, int base, int[] percentiles, int lo, int hi, double[] values) {
+        int n = size();
+        if (level == 0) {
+            for (int i = LEAF_CAPACITY * x, end = i + leafLengths[x]; i < end && lo < hi; i++) {
+                base += leafCounts[i];              // keys up to and including slot i
+                while (lo < hi && PercentileEngine.nearestRank(percentiles[lo], n) <= base) {
+                    values[lo++] = leafKeys[i];
+                }
+            }
+            return;
+        }
+
+        for (int i = FANOUT * x, end = i + innerLengths[x]; i < end && lo < hi; i++) {
+            int next = base + childSizes[i];        // keys up to and including child i
+            int j = lo;
+            while (j < hi && PercentileEngine.nearestRank(percentiles[j], n) <= next) {
+                j++;
+            }
+            if (j > lo) {
+                select(children[i], level - 1, base, percentiles, lo, j, values);
+                lo = j;
+            }
+            base = next;
+        }
+    }
+
+    // index of the child of inner node x that contains the key: the last one whose smallest key is <= key
+    private int childIndex(int x, double key) {
+        int from = FANOUT * x;
+        int lo = 1;
+        int hi = innerLengths[x];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (innerKeys[from + mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    // first slot in [from, to) of the leaf whose key is >= key
+    private int lowerBound(int from, int to, double key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (leafKeys[mid] < key) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    // insert new key with count 1 at position i of the leaf x, which is not full
+    private void insertIntoLeaf(int x, int i, double key) {
+        int slot = LEAF_CAPACITY * x + i;
+        int tail = leafLengths[x] - i;
+        System.arraycopy(leafKeys, slot, leafKeys, slot + 1, tail);
+        System.arraycopy(leafCounts, slot, leafCounts, slot + 1, tail);
+        leafKeys[slot] = key;
+        leafCounts[slot] = 1;
+        leafLengths[x]++;
+    }
+
+    // move the slots of the leaf x from position i on into the empty leaf that follows it
+    private void moveLeafSlots(int x, int i, int right) {
+        int length = leafLengths[x] - i;
+        System.arraycopy(leafKeys, LEAF_CAPACITY * x + i, leafKeys, LEAF_CAPACITY * right, length);
+        System.arraycopy(leafCounts, LEAF_CAPACITY * x + i, leafCounts, LEAF_CAPACITY * right, length);
+        leafLengths[right] = length;
+        leafLengths[x] = i;
+        nextLeaves[right] = nextLeaves[x];
+        nextLeaves[x] = right;
+    }
+
+    // link the new node, split from the child on the given level of the path, as the next child of its parent,
+    // splitting the full parents up to the root
+    private void insertChild(int level, double firstKey, int node, int nodeSize) {
+        while (level > 0) {
+            int slot = path[--level];
+            int x = slot / FANOUT;
+            int i = slot - FANOUT * x + 1;          // position of the new child
+            childSizes[slot] -= nodeSize;
+
+            int n = innerLengths[x];
+            if (n < FANOUT) {
+                insertIntoInner(x, i, firstKey, node, nodeSize);
+                return;
+            }
+
+            // split the full node in halves and insert the child into one of them
+            int half = FANOUT / 2;
+            int right = newInner();
+            System.arraycopy(innerKeys, FANOUT * x + half, innerKeys, FANOUT * right, n - half);
+            System.arraycopy(children, FANOUT * x + half, children, FANOUT * right, n - half);
+            System.arraycopy(childSizes, FANOUT * x + half, childSizes, FANOUT * right, n - half);
+            innerLengths[right] = n - half;
+            innerLengths[x] = half;
+            if (i <= half) {
+                insertIntoInner(x, i, firstKey, node, nodeSize);
+            } else {
+                insertIntoInner(right, i - half, firstKey, node, nodeSize);
+            }
+
+            firstKey = innerKeys[FANOUT * right];
+            node = right;
+            nodeSize = 0;
+            for (int j = FANOUT * right, end = j + innerLengths[right]; j < end; j++) {
+                nodeSize += childSizes[j];
+            }
+        }
+
+        // the root has split, the new root gets the old one and the new node as its children
+        int x = newInner();
+        children[FANOUT * x] = root;
+        childSizes[FANOUT * x] = size - nodeSize;
+        innerLengths[x] = 1;
+        insertIntoInner(x, 1, firstKey, node, nodeSize);
+        root = x;
+        height++;
+    }
+
+    // insert the child at position i of the inner node x, which is not full
+    private void insertIntoInner(int x, int i, double firstKey, int node, int nodeSize) {
+        int slot = FANOUT * x + i;
+        int tail = innerLengths[x] - i;
+        System.arraycopy(innerKeys, slot, innerKeys, slot + 1, tail);
+        System.arraycopy(children, slot, children, slot + 1, tail);
+        System.arraycopy(childSizes, slot, childSizes, slot + 1, tail);
+        innerKeys[slot] = firstKey;
+        children[slot] = node;
+        childSizes[slot] = nodeSize;
+        innerLengths[x]++;
+    }
+
+    // allocate new empty leaf, doubling the capacity of the leaf arrays if needed
+    private int newLeaf() {
+        if (leaves == leafLengths.length) {
+            int capacity = leaves * 2;
+            leafKeys = Arrays.copyOf(leafKeys, LEAF_CAPACITY * capacity);
+            leafCounts = Arrays.copyOf(leafCounts, LEAF_CAPACITY * capacity);
+            leafLengths = Arrays.copyOf(leafLengths, capacity);
+            nextLeaves = Arrays.copyOf(nextLeaves, capacity);
+        }
+        int x = leaves++;
+        leafLengths[x] = 0;
+        nextLeaves[x] = NIL;
+        return x;
+    }
+
+    // check the node index read by the concurrent reader against the number of nodes in the arrays it has read
+    private static void checkNode(int x, int nodes) {
+        if (x < 0 || x >= nodes) {
+            throw new IllegalStateException("tree is modified concurrently");
+        }
+    }
+
+    // allocate new empty inner node, doubling the capacity of the inner arrays if needed
+    private int newInner() {
+        if (inners == innerLengths.length) {
+            int capacity = inners * 2;
+            innerKeys = Arrays.copyOf(innerKeys, FANOUT * capacity);
+            children = Arrays.copyOf(children, FANOUT * capacity);
+            childSizes = Arrays.copyOf(childSizes, FANOUT * capacity);
+            innerLengths = Arrays.copyOf(innerLengths, capacity);
+        }
+        int x = inners++;
+        innerLengths[x] = 0;
+        return x;
+    }
+
+}
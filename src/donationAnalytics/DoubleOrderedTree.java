@@ -0,0 +1,397 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+
+/**
+ * Order-statistic tree specialized for primitive {@code double} keys.
+ * This class allows multiple insertions of identical keys, which are stored in one node with a duplicate count.
+ * <p>
+ * The tree is an AVL tree whose nodes are stored in parallel arrays and referred to by index,
+ * and every node is augmented with the number of keys in its subtree, so that <em>put</em>, <em>selectKMin</em>
+ * and <em>rank</em> take O(log(N)) time in the worst case. Insertion is iterative and does not allocate
+ * once the arrays have grown to the size of the tree.
+ */
+public class DoubleOrderedTree implements PercentileEngine {
+
+    private static final int NIL = 0;                   // index 0 is the sentinel with zero size and height
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // the height of AVL tree with less than 2^31 nodes does not exceed 1.44 * 31
+    private static final int MAX_HEIGHT = 46;
+
+    private double[] keys;
+    private int[] left, right;
+    private int[] counts;                               // number of identical keys stored in the node
+    private int[] sizes;                                // number of keys in the subtree, including duplicates
+    private byte[] heights;
+
+    private int root = NIL;
+    private int nodes;                                  // number of allocated nodes, excluding the sentinel
+
+    private final int[] path = new int[MAX_HEIGHT + 1];   // nodes visited by the current insertion
+
+
+    /**
+     * Initializes new instance of DoubleOrderedTree.
+     */
+    public DoubleOrderedTree() {
+        keys = new double[DEFAULT_CAPACITY];
+        left = new int[DEFAULT_CAPACITY];
+        right = new int[DEFAULT_CAPACITY];
+        counts = new int[DEFAULT_CAPACITY];
+        sizes = new int[DEFAULT_CAPACITY];
+        heights = new byte[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Inserts the key into the tree.
+     *
+     * @param key the key
+     */
+    @Override
+    public void put(double key) {
+        if (root == NIL) {
+            root = newNode(key);
+            return;
+        }
+
+        // descend to the node with the same key or to the free link, counting the new key in every subtree on the way
+        int depth = 0;
+        int x = root;
+        while (true) {
+            path[depth++] = x;
+            sizes[x]++;
+
+            if (key == keys[x]) {
+                counts[x]++;            // the shape of the tree does not change
+                return;
+            }
+
+            int next = key < keys[x] ? left[x] : right[x];
+            if (next == NIL) {
+                break;
+            }
+            x = next;
+        }
+
+        int node = newNode(key);
+        if (key < keys[x]) {
+            left[x] = node;
+        } else {
+            right[x] = node;
+        }
+
+        // restore the balance on the way back to the root,
+        // the nodes above the subtree whose height has not changed are already balanced
+        for (int i = depth - 1; i >= 0; i--) {
+            int h = path[i];
+            int height = heights[h];
+            int balanced = balance(h);
+
+            if (i == 0) {
+                root = balanced;
+            } else if (balanced != h) {
+                int parent = path[i - 1];
+                if (left[parent] == h) {
+                    left[parent] = balanced;
+                } else {
+                    right[parent] = balanced;
+                }
+            }
+
+            if (heights[balanced] == height) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the k-th smallest key in the tree, where 0 <= k < size().
+     *
+     * @param k the order statistic
+     * @return the k-th smallest key
+     * @throws IllegalArgumentException unless {@code k} is between 0 and size() - 1
+     */
+    public double selectKMin(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IllegalArgumentException("argument to selectKMin() is invalid: " + k);
+        }
+
+        // the descent is bounded by the height, so that a concurrent reader never loops on a torn tree
+        int x = root;
+        for (int depth = 0; depth < MAX_HEIGHT && x != NIL; depth++) {
+            int t = sizes[left[x]];
+            if (k < t) {
+                x = left[x];
+            } else if (k < t + counts[x]) {
+                return keys[x];
+            } else {
+                k -= t + counts[x];
+                x = right[x];
+            }
+        }
+        throw new IllegalStateException("tree is modified concurrently");
+    }
+
+    /**
+     * Returns the key that corresponds to the n-th percentile, computed using the nearest-rank method.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return key corresponding to the percentile
+     */
+    @Override
+    public double percentile(int percentile) {
+        return selectKMin(PercentileEngine.nearestRank(percentile, size()) - 1);
+    }
+
+    /**
+     * Computes the keys that correspond to several percentiles in one descent: the ranks of the percentiles
+     * are split between the subtrees at every node, so the nodes on the common part of their paths are visited once.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the keys corresponding to the percentiles, in the same order
+     */
+    @Override
+    public void percentiles(int[] percentiles, double[] values) {
+        select(root, 0, percentiles, 0, percentiles.length, values);
+    }
+
+    /**
+     * Returns the number of keys in the tree strictly less than {@code key}.
+     *
+     * @param key the key
+     * @return the number of keys strictly less than {@code key}
+     */
+    public int rank(double key) {
+        int rank = 0;
+        int x = root;
+        while (x != NIL) {
+            if (key < keys[x]) {
+                x = left[x];
+            } else if (key > keys[x]) {
+                rank += sizes[left[x]] + counts[x];
+                x = right[x];
+            } else {
+                return rank + sizes[left[x]];
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the size of the tree, including the duplicate keys.
+     *
+     * @return size of the tree
+     */
+    @Override
+    public int size() {
+        return sizes[root];
+    }
+
+    /**
+     * Returns the number of distinct keys in the tree.
+     *
+     * @return number of distinct keys
+     */
+    int distinctKeys() {
+        return nodes;
+    }
+
+    /**
+     * Copies the distinct keys in ascending order and their counts into the arrays,
+     * which must have room for {@link #distinctKeys()} elements.
+     *
+     * @param keys   array that receives the distinct keys
+     * @param counts array that receives the number of identical keys of each distinct key
+     */
+    void copyTo(double[] keys, int[] counts) {
+        int[] stack = new int[MAX_HEIGHT + 1];
+        int depth = 0;
+        int i = 0;
+        int x = root;
+        while (x != NIL || depth > 0) {
+            while (x != NIL) {
+                stack[depth++] = x;
+                x = left[x];
+            }
+            x = stack[--depth];
+            keys[i] = this.keys[x];
+            counts[i++] = this.counts[x];
+            x = right[x];
+        }
+    }
+
+    /**
+     * Writes the distinct keys in ascending order together with their counts into the snapshot.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(DatabaseSnapshot.EXACT_AMOUNTS);
+        out.writeInt(nodes);
+
+        // in-order traversal with the explicit stack
+        int[] stack = new int[MAX_HEIGHT + 1];
+        int depth = 0;
+        int x = root;
+        while (x != NIL || depth > 0) {
+            while (x != NIL) {
+                stack[depth++] = x;
+                x = left[x];
+            }
+            x = stack[--depth];
+            out.writeDouble(keys[x]);
+            out.writeInt(counts[x]);
+            x = right[x];
+        }
+    }
+
+    /**
+     * Restores the empty tree from the distinct keys in ascending order and their counts,
+     * building the perfectly balanced tree in linear time.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        if (root != NIL) {
+            throw new IllegalStateException("tree is not empty");
+        }
+        DatabaseSnapshot.readTag(in, DatabaseSnapshot.EXACT_AMOUNTS);
+
+        int n = DatabaseSnapshot.readCount(in);
+        while (keys.length <= n) {
+            grow();
+        }
+        for (int x = 1; x <= n; x++) {
+            keys[x] = in.readDouble();
+            counts[x] = in.readInt();
+            if (counts[x] < 1 || x > 1 && !(keys[x] > keys[x - 1])) {
+                throw new StreamCorruptedException("snapshot is corrupted: amounts are not ascending");
+            }
+        }
+        nodes = n;
+        root = build(1, n);
+    }
+
+   /***************************************************************************
+    *  Node helper methods.
+    ***************************************************************************/
+
+    // find the keys of the percentiles lo..hi-1, whose ranks are in the subtree x preceded by base smaller keys
+    private void select(int x, int base, int[] percentiles, int lo, int hi, double[] values) {
+        int n = size();
+        while (lo < hi) {
+            int t = base + sizes[left[x]];          // keys before node x
+            int i = lo;
+            while (i < hi && PercentileEngine.nearestRank(percentiles[i], n) <= t) {
+                i++;
+            }
+            if (i > lo) {
+                select(left[x], base, percentiles, lo, i, values);
+            }
+
+            int c = t + counts[x];                  // keys up to and including node x
+            while (i < hi && PercentileEngine.nearestRank(percentiles[i], n) <= c) {
+                values[i++] = keys[x];
+            }
+
+            // the remaining ranks are in the right subtree
+            lo = i;
+            base = c;
+            x = right[x];
+        }
+    }
+
+    // allocate new leaf node with the given key
+    private int newNode(double key) {
+        if (++nodes == keys.length) {
+            grow();
+        }
+        int x = nodes;
+        keys[x] = key;
+        left[x] = NIL;
+        right[x] = NIL;
+        counts[x] = 1;
+        sizes[x] = 1;
+        heights[x] = 1;
+        return x;
+    }
+
+    // link the nodes lo..hi, whose keys are ascending, into the balanced subtree, return its root
+    private int build(int lo, int hi) {
+        if (lo > hi) {
+            return NIL;
+        }
+        int mid = (lo + hi) >>> 1;
+        left[mid] = build(lo, mid - 1);
+        right[mid] = build(mid + 1, hi);
+        update(mid);
+        return mid;
+    }
+
+    // double the capacity of the node arrays
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+    }
+
+    // recompute the height and the size of the node from its children
+    private void update(int x) {
+        heights[x] = (byte) (Math.max(heights[left[x]], heights[right[x]]) + 1);
+        sizes[x] = sizes[left[x]] + sizes[right[x]] + counts[x];
+    }
+
+    // restore AVL invariant at node h, return the root of the balanced subtree
+    private int balance(int h) {
+        int factor = heights[left[h]] - heights[right[h]];
+        if (factor > 1) {
+            if (heights[left[left[h]]] < heights[right[left[h]]]) {
+                left[h] = rotateLeft(left[h]);
+            }
+            return rotateRight(h);
+        }
+        if (factor < -1) {
+            if (heights[right[right[h]]] < heights[left[right[h]]]) {
+                right[h] = rotateRight(right[h]);
+            }
+            return rotateLeft(h);
+        }
+        update(h);
+        return h;
+    }
+
+    // make a left child the root of the subtree
+    private int rotateRight(int h) {
+        int x = left[h];
+        left[h] = right[x];
+        right[x] = h;
+        update(h);
+        update(x);
+        return x;
+    }
+
+    // make a right child the root of the subtree
+    private int rotateLeft(int h) {
+        int x = right[h];
+        right[h] = left[x];
+        left[x] = h;
+        update(h);
+        update(x);
+        return x;
+    }
+
+}
@@ -0,0 +1,164 @@
+package donationAnalytics;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Input stream that follows the file while it is being appended to, like {@code tail -f}:
+ * when the end of the file is reached, the stream waits for more bytes instead of reporting the end of stream.
+ * <p>
+ * The stream returns complete lines only, so the line that is still being written is not read in part,
+ * unless it alone does not fit into the buffer of the reader. The size of the file is polled at the fixed interval.
+ * The output is flushed before waiting for more lines and at most once per interval while the lines keep arriving,
+ * which bounds the delay between the arrival of a line and the appearance of its statistics in the output.
+ * The stream ends once the latch is released and all complete lines appended so far are read.
+ */
+public class FollowingInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long intervalMillis;
+    private final Flushable output;
+    private final CountDownLatch stopped;
+
+    private long position;                  // position in the file following the last returned byte
+    private long lastFlush;
+
+
+    /**
+     * Opens the file, which is read from the given position, e.g. from the position after the lines processed
+     * before the snapshot was saved, see {@link #getPosition()}.
+     *
+     * @param path           path to the file
+     * @param position       position in the file of the first byte to read, 0 to read from the beginning
+     * @param intervalMillis interval of polling the file and flushing the output, in milliseconds
+     * @param output         output flushed while the stream waits for more lines
+     * @param stopped        latch that is released to end the stream
+     * @throws IOException if the file cannot be opened
+     */
+    public FollowingInputStream(Path path, long position, long intervalMillis, Flushable output, CountDownLatch stopped)
+            throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("position is invalid: " + position);
+        }
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("interval is invalid: " + intervalMillis);
+        }
+        this.position = position;
+        this.intervalMillis = intervalMillis;
+        this.output = output;
+        this.stopped = stopped;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Reads the next byte, waiting until it is followed by the line terminator.
+     *
+     * @return byte, or -1 if the stream is stopped
+     * @throws IOException if an I/O error occurs or the thread is interrupted
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    /**
+     * Reads up to {@code len} bytes that end with the line terminator, waiting until such bytes are appended.
+     *
+     * @param b   buffer
+     * @param off index in the buffer
+     * @param len maximum number of bytes to read
+     * @return number of bytes read, or -1 if the stream is stopped
+     * @throws IOException if an I/O error occurs, the file is truncated or the thread is interrupted
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            // the lines appended before the stream was stopped are still read
+            boolean stopping = stopped.getCount() == 0;
+
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            int end = n > 0 ? completeLines(b, off, n, len) : 0;
+            if (end > 0) {
+                position += end;
+                if (System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(intervalMillis)) {
+                    flushOutput();
+                }
+                return end;
+            }
+
+            if (stopping) {
+                return -1;
+            }
+            if (channel.size() < position) {
+                throw new IOException("input file was truncated");
+            }
+
+            // no complete lines yet, make the output of the previous lines visible and wait
+            flushOutput();
+            try {
+                stopped.await(intervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while following the input file");
+            }
+        }
+    }
+
+    /**
+     * Returns the position in the file following the last byte read, which is the end of the last complete line.
+     *
+     * @return position in the file
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the number of the bytes read into the buffer that form complete lines.
+     *
+     * @param b   buffer
+     * @param off index of the first byte read
+     * @param n   number of bytes read
+     * @param len maximum number of bytes to read
+     * @return number of bytes up to the last line terminator, or {@code n} if the bytes filled the buffer
+     * without any terminator, or 0 if the bytes are the beginning of an incomplete line
+     */
+    private static int completeLines(byte[] b, int off, int n, int len) {
+        for (int i = off + n - 1; i >= off; i--) {
+            if (b[i] == '\n' || b[i] == '\r') {
+                return i - off + 1;
+            }
+        }
+        return n == len ? n : 0;
+    }
+
+    private void flushOutput() throws IOException {
+        output.flush();
+        lastFlush = System.nanoTime();
+    }
+
+}
@@ -0,0 +1,331 @@
+package donationAnalytics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+
+/**
+ * Pipeline that reads, parses and validates donation entries on several threads while passing the valid entries
+ * to the consumer in the same order as in the input.
+ * <p>
+ * The reader thread copies the raw lines into chunks and numbers them, and distributes the chunks round-robin
+ * among the parser workers. Every worker parses the lines of its chunks with its own {@link DonationEntryParser}.
+ * The aggregator, which runs on the calling thread, takes the parsed chunks from the workers in the order
+ * of their numbers and passes the entries to the consumer, so the consumer needs no synchronization and observes
+ * exactly the same sequence of entries as the sequential loop. The stages are connected by bounded
+ * {@link RingBuffer}s, and the processed chunks are returned to the reader to be reused.
+ */
+public class IngestionPipeline {
+
+    private static final int CHUNK_LINES = 1024;
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int RING_CAPACITY = 8;
+
+    private final int workers;
+    private final Supplier<DonationEntryParser> parsers;
+
+
+    /**
+     * Consumer of the valid donation entries.
+     */
+    public interface EntryConsumer {
+
+        /**
+         * Processes the entry.
+         *
+         * @param entry valid donation entry
+         * @throws IOException if the entry cannot be processed
+         */
+        void accept(DonationEntry entry) throws IOException;
+
+    }
+
+    /**
+     * Block of consecutive input lines together with the entries parsed from them.
+     */
+    private static final class Chunk {
+
+        private byte[] data = new byte[CHUNK_BYTES];
+        private int length;
+        private final int[] starts = new int[CHUNK_LINES];
+        private final int[] ends = new int[CHUNK_LINES];
+        private int lines;
+
+        private final DonationEntry[] entries = new DonationEntry[CHUNK_LINES];
+        private int count;
+
+        private long sequence;
+        private boolean last;           // marks the end of the input, has no lines
+
+
+        /**
+         * Appends the line to the chunk.
+         *
+         * @param buf  buffer with the line
+         * @param from index of the first byte of the line
+         * @param to   index after the last byte of the line
+         */
+        private void addLine(byte[] buf, int from, int to) {
+            int n = to - from;
+            if (length + n > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + n));
+            }
+            System.arraycopy(buf, from, data, length, n);
+            starts[lines] = length;
+            ends[lines] = length + n;
+            length += n;
+            lines++;
+        }
+
+        /**
+         * Parses the lines of the chunk, keeping only the valid entries.
+         *
+         * @param parser parser
+         */
+        private void parse(DonationEntryParser parser) {
+            count = 0;
+            for (int i = 0; i < lines; i++) {
+                DonationEntry entry = parser.parse(data, starts[i], ends[i]);
+                if (entry != null) {
+                    entries[count++] = entry;
+                }
+            }
+        }
+
+        /**
+         * Empties the chunk so it can be filled again.
+         */
+        private void clear() {
+            Arrays.fill(entries, 0, count, null);
+            length = 0;
+            lines = 0;
+            count = 0;
+        }
+
+    }
+
+
+    /**
+     * Initializes the pipeline.
+     *
+     * @param workers number of parser workers, at least 1
+     * @param parsers factory of the parsers of the workers, see {@link DonationsDatabase#newParser()}
+     */
+    public IngestionPipeline(int workers, Supplier<DonationEntryParser> parsers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("number of workers is invalid: " + workers);
+        }
+        this.workers = workers;
+        this.parsers = parsers;
+    }
+
+    /**
+     * Reads all lines from the reader and passes the valid entries to the consumer in the input order.
+     * The consumer is called on the calling thread. The reader is not closed.
+     *
+     * @param reader   reader of the input lines
+     * @param consumer consumer of the valid entries
+     * @throws IOException if the input cannot be read or the consumer fails
+     */
+    public void run(ByteLineReader reader, EntryConsumer consumer) throws IOException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread aggregator = Thread.currentThread();
+
+        RingBuffer<Chunk> free = new RingBuffer<>(2 * workers * RING_CAPACITY);
+
+        @SuppressWarnings("unchecked")
+        RingBuffer<Chunk>[] parsing = (RingBuffer<Chunk>[]) new RingBuffer<?>[workers];
+        @SuppressWarnings("unchecked")
+        RingBuffer<Chunk>[] parsed = (RingBuffer<Chunk>[]) new RingBuffer<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            parsing[w] = new RingBuffer<>(RING_CAPACITY);
+            parsed[w] = new RingBuffer<>(RING_CAPACITY);
+        }
+
+        Thread[] threads = new Thread[workers + 1];
+        threads[0] = new Thread(() -> {
+            try {
+                read(reader, free, parsing);
+            } catch (Throwable e) {
+                fail(failure, e, threads, aggregator);
+            }
+        }, "donation-reader");
+
+        for (int w = 0; w < workers; w++) {
+            RingBuffer<Chunk> in = parsing[w], out = parsed[w];
+            threads[w + 1] = new Thread(() -> {
+                try {
+                    parse(parsers.get(), in, out);
+                } catch (Throwable e) {
+                    fail(failure, e, threads, aggregator);
+                }
+            }, "donation-parser-" + w);
+        }
+
+        try {
+            for (int i = 0; i < 2 * workers * RING_CAPACITY; i++) {
+                free.put(new Chunk());             // never waits, the ring is large enough
+            }
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+            aggregate(parsed, free, consumer);
+        } catch (InterruptedException e) {
+            rethrow(failure.get());
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            for (Thread thread : threads) {
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            }
+            joinAll(threads);
+        }
+    }
+
+    /**
+     * Reader stage: copies the lines into chunks and distributes them round-robin among the workers,
+     * followed by the end marker for every worker.
+     *
+     * @param reader  reader of the input lines
+     * @param free    empty chunks
+     * @param parsing input rings of the workers
+     * @throws IOException          if the input cannot be read
+     * @throws InterruptedException if the pipeline is stopped
+     */
+    private void read(ByteLineReader reader, RingBuffer<Chunk> free, RingBuffer<Chunk>[] parsing)
+            throws IOException, InterruptedException {
+        long sequence = 0;
+        Chunk chunk = free.take();
+        while (reader.nextLine()) {
+            chunk.addLine(reader.buffer(), reader.lineStart(), reader.lineEnd());
+            if (chunk.lines == CHUNK_LINES) {
+                chunk.sequence = sequence;
+                parsing[(int) (sequence++ % workers)].put(chunk);
+                chunk = free.take();
+            }
+        }
+        if (chunk.lines > 0) {
+            chunk.sequence = sequence;
+            parsing[(int) (sequence++ % workers)].put(chunk);
+        }
+
+        for (int i = 0; i < workers; i++) {
+            Chunk end = new Chunk();
+            end.sequence = sequence;
+            end.last = true;
+            parsing[(int) (sequence++ % workers)].put(end);
+        }
+    }
+
+    /**
+     * Worker stage: parses the chunks until the end marker.
+     *
+     * @param parser parser of the worker
+     * @param in     input ring of the worker
+     * @param out    output ring of the worker
+     * @throws InterruptedException if the pipeline is stopped
+     */
+    private static void parse(DonationEntryParser parser, RingBuffer<Chunk> in, RingBuffer<Chunk> out)
+            throws InterruptedException {
+        Chunk chunk;
+        do {
+            chunk = in.take();
+            chunk.parse(parser);
+            out.put(chunk);
+        } while (!chunk.last);
+    }
+
+    /**
+     * Aggregator stage: takes the parsed chunks in the input order and passes their entries to the consumer.
+     *
+     * @param parsed   output rings of the workers
+     * @param free     empty chunks
+     * @param consumer consumer of the valid entries
+     * @throws IOException          if the consumer fails
+     * @throws InterruptedException if the pipeline is stopped
+     */
+    private void aggregate(RingBuffer<Chunk>[] parsed, RingBuffer<Chunk> free, EntryConsumer consumer)
+            throws IOException, InterruptedException {
+        for (long sequence = 0; ; sequence++) {
+            Chunk chunk = parsed[(int) (sequence % workers)].take();
+            if (chunk.sequence != sequence) {
+                throw new IllegalStateException("chunk out of order: " + chunk.sequence + ", expected " + sequence);
+            }
+            if (chunk.last) {
+                return;
+            }
+            for (int i = 0; i < chunk.count; i++) {
+                consumer.accept(chunk.entries[i]);
+            }
+            chunk.clear();
+            free.put(chunk);
+        }
+    }
+
+    /**
+     * Records the first failure and stops all stages.
+     *
+     * @param failure    first failure
+     * @param e          failure of the stage
+     * @param threads    reader and worker threads
+     * @param aggregator aggregator thread
+     */
+    private static void fail(AtomicReference<Throwable> failure, Throwable e, Thread[] threads, Thread aggregator) {
+        if (!(e instanceof InterruptedException) && failure.compareAndSet(null, e)) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            aggregator.interrupt();
+        }
+    }
+
+    /**
+     * Rethrows the failure of the stage, if any, on the calling thread.
+     *
+     * @param failure failure or null
+     * @throws IOException if the stage failed with {@code IOException}
+     */
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure == null) {
+            return;
+        }
+        Thread.interrupted();               // clears the interrupt used to stop the aggregator
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IOException(failure);
+    }
+
+    /**
+     * Waits for the threads to finish.
+     *
+     * @param threads threads
+     * @throws InterruptedIOException if the calling thread is interrupted
+     */
+    private static void joinAll(Thread[] threads) throws InterruptedIOException {
+        for (Thread thread : threads) {
+            if (thread == null) {
+                continue;
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,399 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+
+/**
+ * Approximate percentile engine with bounded memory, based on the KLL quantile sketch
+ * (Karnin, Lang, Liberty, "Optimal Quantile Approximation in Streams", 2016).
+ * <p>
+ * The amounts are kept in a hierarchy of compactors: an amount at level h represents 2^h original amounts.
+ * Every level is kept sorted: the inserted amount is shifted into its place in the lowest level, and when a level
+ * exceeds its capacity, every other amount, starting at a random offset, is merged into the next level,
+ * while the rest are discarded. A percentile is then found by merging the levels up to its rank,
+ * without sorting or allocating anything. The capacities decrease geometrically
+ * from the top level down, so the sketch holds O(k) amounts regardless of the number of insertions.
+ * The normalized rank error of a percentile is about {@code 2.3 / k^0.97} with high probability.
+ * Sketches built with the same {@code k} can be merged.
+ */
+public class KllSketch implements PercentileEngine {
+
+    private static final int MIN_K = 8;
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    // empirical fit of the normalized rank error of the KLL sketch: error = ERROR_FACTOR / k^ERROR_EXPONENT
+    private static final double ERROR_FACTOR = 2.296;
+    private static final double ERROR_EXPONENT = 0.9723;
+
+    private static final int MAX_LEVELS = 61;
+
+    private final int k;
+
+    private double[][] levels = new double[1][MIN_LEVEL_CAPACITY];
+    private int[] levelSizes = new int[1];
+    private int numLevels = 1;
+
+    // positions in the levels and the merged weight and amount of the current query, see startMerge
+    private int[] positions = new int[1];
+    private long mergedWeight;
+    private double mergedAmount;
+
+    private int size;                   // number of amounts inserted into the sketch
+    private int retained;               // number of amounts stored in all levels
+    private int maxRetained;
+
+    private long random = 0x9E3779B97F4A7C15L;    // state of the xorshift generator for the compaction offsets
+
+
+    /**
+     * Initializes empty sketch with the given accuracy parameter.
+     *
+     * @param k accuracy parameter, the larger the more accurate
+     */
+    public KllSketch(int k) {
+        if (k < MIN_K) {
+            throw new IllegalArgumentException("k is too small: " + k);
+        }
+        this.k = k;
+        maxRetained = capacity(0);
+    }
+
+    /**
+     * Returns the accuracy parameter {@code k} that guarantees the given normalized rank error.
+     *
+     * @param rankError normalized rank error, 0 < error < 1
+     * @return accuracy parameter
+     */
+    public static int kForRankError(double rankError) {
+        if (!(rankError > 0 && rankError < 1)) {
+            throw new IllegalArgumentException("rank error is invalid: " + rankError);
+        }
+        int k = (int) Math.ceil(Math.pow(ERROR_FACTOR / rankError, 1 / ERROR_EXPONENT));
+        return Math.max(k, MIN_K);
+    }
+
+    /**
+     * Returns the normalized rank error of the sketch with the given accuracy parameter.
+     *
+     * @param k accuracy parameter
+     * @return normalized rank error
+     */
+    public static double rankError(int k) {
+        return ERROR_FACTOR / Math.pow(k, ERROR_EXPONENT);
+    }
+
+    /**
+     * Inserts the amount into the lowest level, compacting the levels if the sketch is full.
+     *
+     * @param amount donation amount
+     */
+    @Override
+    public void put(double amount) {
+        insert(amount);
+        size++;
+        if (retained > maxRetained) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the approximate amount that corresponds to the n-th percentile, computed using the nearest-rank method
+     * over the weighted amounts stored in the sketch.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return amount corresponding to the percentile
+     */
+    @Override
+    public double percentile(int percentile) {
+        startMerge();
+        return mergeUntil(PercentileEngine.nearestRank(percentile, size));
+    }
+
+    /**
+     * Returns the approximate amounts that correspond to several percentiles, found in one merge of the levels.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the amounts corresponding to the percentiles, in the same order
+     */
+    @Override
+    public void percentiles(int[] percentiles, double[] values) {
+        // merge the sorted levels until the cumulative weight reaches the rank of every percentile in turn
+        startMerge();
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = mergeUntil(PercentileEngine.nearestRank(percentiles[i], size));
+        }
+    }
+
+    /**
+     * Returns the number of amounts inserted into the sketch.
+     *
+     * @return number of amounts
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of amounts stored in the sketch.
+     *
+     * @return number of stored amounts
+     */
+    public int retained() {
+        return retained;
+    }
+
+    /**
+     * Merges the other sketch with the same accuracy parameter into this one.
+     *
+     * @param other sketch to merge
+     */
+    public void merge(KllSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("sketches with different k cannot be merged: " + k + ", " + other.k);
+        }
+
+        while (numLevels < other.numLevels) {
+            addLevel();
+        }
+        for (int h = 0; h < other.numLevels; h++) {
+            mergeInto(h, other.levels[h], 0, other.levelSizes[h], 1);
+        }
+        size += other.size;
+        while (retained > maxRetained) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes the accuracy parameter, the compactors and the state of the random generator into the snapshot.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(DatabaseSnapshot.SKETCH);
+        out.writeInt(k);
+        out.writeInt(size);
+        out.writeLong(random);
+        out.writeInt(numLevels);
+        for (int h = 0; h < numLevels; h++) {
+            out.writeInt(levelSizes[h]);
+            for (int i = 0; i < levelSizes[h]; i++) {
+                out.writeDouble(levels[h][i]);
+            }
+        }
+    }
+
+    /**
+     * Restores the empty sketch from the snapshot of the sketch with the same accuracy parameter.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        if (size > 0) {
+            throw new IllegalStateException("sketch is not empty");
+        }
+        DatabaseSnapshot.readTag(in, DatabaseSnapshot.SKETCH);
+        int snapshotK = in.readInt();
+        if (snapshotK != k) {
+            throw new StreamCorruptedException("snapshot was made with k = " + snapshotK + " instead of " + k);
+        }
+
+        int snapshotSize = DatabaseSnapshot.readCount(in);
+        long snapshotRandom = in.readLong();
+        int snapshotLevels = DatabaseSnapshot.readCount(in);
+        if (snapshotLevels < 1 || snapshotLevels > MAX_LEVELS) {
+            throw new StreamCorruptedException("snapshot is corrupted: " + snapshotLevels + " levels");
+        }
+        while (numLevels < snapshotLevels) {
+            addLevel();
+        }
+        for (int h = 0; h < numLevels; h++) {
+            int n = DatabaseSnapshot.readCount(in);
+            for (int i = 0; i < n; i++) {
+                append(h, in.readDouble());
+                if (i > 0 && !(levels[h][i] >= levels[h][i - 1])) {
+                    throw new StreamCorruptedException("snapshot is corrupted: amounts are not ascending");
+                }
+            }
+        }
+        size = snapshotSize;
+        random = snapshotRandom;
+    }
+
+    /**
+     * Compacts the lowest level that exceeds its capacity, promoting half of its amounts to the next level.
+     * Both levels are sorted, so the promoted amounts are merged into the next level in linear time.
+     */
+    private void compact() {
+        int h = 0;
+        while (h < numLevels - 1 && levelSizes[h] < capacity(h)) {
+            h++;
+        }
+        if (h == numLevels - 1) {
+            addLevel();
+        }
+
+        int n = levelSizes[h];
+
+        // if the number of amounts is odd, the smallest one stays at its level, so that the total weight is preserved
+        int kept = n % 2;
+        mergeInto(h + 1, levels[h], kept + nextBit(), n, 2);
+        retained -= n - kept;
+        levelSizes[h] = kept;
+    }
+
+    /**
+     * Inserts the amount into its place in the sorted lowest level.
+     *
+     * @param amount amount
+     */
+    private void insert(double amount) {
+        grow(0, 1);
+        double[] level = levels[0];
+        int i = levelSizes[0];
+        for (; i > 0 && level[i - 1] > amount; i--) {
+            level[i] = level[i - 1];
+        }
+        level[i] = amount;
+        levelSizes[0]++;
+        retained++;
+    }
+
+    /**
+     * Merges the sorted amounts {@code source[from], source[from + step], ...} below {@code to} into the sorted level,
+     * from the largest amount down, so that the level stays sorted.
+     *
+     * @param h      level
+     * @param source sorted amounts, another array than the level
+     * @param from   index of the first amount
+     * @param to     index after the last amount
+     * @param step   distance between the merged amounts
+     */
+    private void mergeInto(int h, double[] source, int from, int to, int step) {
+        int m = from < to ? (to - from + step - 1) / step : 0;
+        grow(h, m);
+        double[] level = levels[h];
+        int i = levelSizes[h] - 1;
+        int j = from + (m - 1) * step;
+        for (int target = levelSizes[h] + m - 1; j >= from; target--) {
+            if (i >= 0 && level[i] > source[j]) {
+                level[target] = level[i--];
+            } else {
+                level[target] = source[j];
+                j -= step;
+            }
+        }
+        levelSizes[h] += m;
+        retained += m;
+    }
+
+    /**
+     * Grows the level if it cannot hold the given number of additional amounts.
+     *
+     * @param h level
+     * @param n number of additional amounts
+     */
+    private void grow(int h, int n) {
+        int needed = levelSizes[h] + n;
+        if (needed > levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(needed, levels[h].length * 2));
+        }
+    }
+
+    /**
+     * Starts the merge of the sorted levels in ascending order from the smallest amount.
+     */
+    private void startMerge() {
+        Arrays.fill(positions, 0, numLevels, 0);
+        mergedWeight = 0;
+        mergedAmount = Double.NaN;
+    }
+
+    /**
+     * Continues the merge of the sorted levels until the cumulative weight of the merged amounts reaches the rank.
+     *
+     * @param rank rank, not smaller than the rank of the previous call since {@link #startMerge()}
+     * @return the last merged amount, or {@code NaN} if the rank is 0
+     */
+    private double mergeUntil(long rank) {
+        while (mergedWeight < rank) {
+            int next = -1;
+            for (int h = 0; h < numLevels; h++) {
+                if (positions[h] < levelSizes[h] && (next < 0 || levels[h][positions[h]] < levels[next][positions[next]])) {
+                    next = h;
+                }
+            }
+            mergedAmount = levels[next][positions[next]++];
+            mergedWeight += 1L << next;
+        }
+        return mergedAmount;
+    }
+
+    /**
+     * Appends the amount to the level, growing the level if necessary.
+     *
+     * @param h      level
+     * @param amount amount
+     */
+    private void append(int h, double amount) {
+        grow(h, 1);
+        levels[h][levelSizes[h]++] = amount;
+        retained++;
+    }
+
+    /**
+     * Adds the empty top level and updates the capacity of the sketch.
+     */
+    private void addLevel() {
+        if (numLevels == MAX_LEVELS) {
+            throw new IllegalStateException("sketch has too many levels");
+        }
+        if (numLevels == levels.length) {
+            levels = Arrays.copyOf(levels, numLevels * 2);
+            levelSizes = Arrays.copyOf(levelSizes, numLevels * 2);
+            positions = new int[numLevels * 2];
+        }
+        levels[numLevels] = new double[MIN_LEVEL_CAPACITY];
+        levelSizes[numLevels] = 0;
+        numLevels++;
+
+        maxRetained = 0;
+        for (int h = 0; h < numLevels; h++) {
+            maxRetained += capacity(h);
+        }
+    }
+
+    /**
+     * Returns the capacity of the level, which decreases geometrically from the top level down.
+     *
+     * @param h level
+     * @return capacity
+     */
+    private int capacity(int h) {
+        int depth = numLevels - 1 - h;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) (k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    /**
+     * Returns the next random bit from the xorshift generator.
+     *
+     * @return 0 or 1
+     */
+    private int nextBit() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random >>> 63);
+    }
+
+}
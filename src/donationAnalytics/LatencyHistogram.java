@@ -0,0 +1,136 @@
+package donationAnalytics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram of latencies in nanoseconds with buckets of logarithmic size, in the manner of HdrHistogram:
+ * the values below 2^SUB_BUCKET_BITS have their own buckets, and every following power of two is split
+ * into 2^(SUB_BUCKET_BITS - 1) buckets of equal width, so every value is reported with the relative error
+ * of at most 1/32 and the whole range of {@code long} fits into ~2000 buckets.
+ * <p>
+ * The latencies are recorded by a single thread without locks: every count is incremented by an ordered store,
+ * which costs the same as a plain one, and may be read by any other thread at any time. The reader may see
+ * a recent record in one of the counts and not yet in the others, which is acceptable for monitoring.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();      // sum of the latencies
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Records the latency. Must be called by one thread only.
+     *
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        int bucket = bucketOf(value);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        count.lazySet(count.get() + 1);
+        total.lazySet(total.get() + value);
+        if (value > max.get()) {
+            max.lazySet(value);
+        }
+    }
+
+    /**
+     * Adds the latencies recorded by the other histogram into this one, e.g. to merge the histograms
+     * of several threads. Must be called by the thread that records into this histogram.
+     *
+     * @param other histogram, which may be recorded concurrently
+     */
+    public void add(LatencyHistogram other) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c > 0) {
+                counts.lazySet(i, counts.get(i) + c);
+                n += c;
+            }
+        }
+        count.lazySet(count.get() + n);
+        total.lazySet(total.get() + other.total.get());
+        if (other.max.get() > max.get()) {
+            max.lazySet(other.max.get());
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return number of latencies
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded latency.
+     *
+     * @return latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long mean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Returns the latency that corresponds to the percentile, computed using the nearest-rank method:
+     * the largest value of the bucket that contains the latency of the rank, but at most the largest latency.
+     *
+     * @param percentile percentile, 0 < p <= 100, e.g. 99.9
+     * @return latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile is invalid: " + percentile);
+        }
+
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        long rank = (long) Math.ceil(percentile * n / 100.0);
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && n > 0; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    // index of the bucket that contains the non-negative value
+    private static int bucketOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    // largest value that falls into the bucket
+    private static long highestValueOf(int bucket) {
+        int shift = Math.max(0, bucket / HALF_SUB_BUCKETS - 1);
+        long subBucket = bucket - ((long) shift << (SUB_BUCKET_BITS - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
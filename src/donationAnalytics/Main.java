@@ -1,7 +1,10 @@
 package donationAnalytics;
 
 import java.io.*;
-import java.util.*;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 
 
 /**
@@ -9,9 +12,20 @@ import java.util.*;
  */
 public class Main {
 
-    private final int percentile;
+    private final int[] percentiles;
+    private final int[] statistics;                 // statistics of the current entry, see writeStatistics
+    private final double[] values;                  // unrounded percentile amounts of the current entry
+    private final int threads, shards;
+    private final boolean mappedInput;
+    private final String restorePath, snapshotPath;
+    private final long followInterval;
+    private final int queryPort;
+    private final long metricsInterval;
+    private final CountDownLatch stopped = new CountDownLatch(1);
     private final String inputPath, outputPath;
+    private final Supplier<PercentileEngine> engines;
     private final DonationsDatabase database;
+    private final ProcessingMetrics metrics;        // null if the metrics are not collected
 
 
     /**
@@ -23,32 +37,97 @@ public class Main {
      * @throws IOException if something went wrong
      */
     public Main(String inputPath, String percPath, String outputPath) throws IOException {
-        this.inputPath = inputPath;
-        this.outputPath = outputPath;
+        this(new Options(inputPath, percPath, outputPath));
+    }
+
+    /**
+     * Initializes the donation analytics solver with the given options.
+     *
+     * @param options paths to the files and optional settings
+     * @throws IOException if something went wrong
+     */
+    public Main(Options options) throws IOException {
+        inputPath = options.getInputPath();
+        outputPath = options.getOutputPath();
+        threads = options.getThreads();
+        shards = options.getShards();
+        mappedInput = options.isMappedInput();
+        restorePath = options.getRestorePath();
+        snapshotPath = options.getSnapshotPath();
+        if (shards > 0 && (restorePath != null || snapshotPath != null)) {
+            throw new IllegalArgumentException("snapshots are not supported together with shards");
+        }
+        followInterval = options.getFollowInterval();
+        if (followInterval > 0 && (threads > 0 || shards > 0 || mappedInput)) {
+            throw new IllegalArgumentException("following the input is supported only with sequential processing of the stream");
+        }
+
+        queryPort = options.getQueryPort();
+        if (queryPort > 0 && (shards > 0 || options.isApproximate())) {
+            throw new IllegalArgumentException("queries are not supported together with shards or approximate percentiles");
+        }
+
+        metricsInterval = options.getMetricsInterval();
+        if (metricsInterval > 0 && shards > 0) {
+            throw new IllegalArgumentException("metrics are not supported together with shards");
+        }
 
-        percentile = readPercentile(percPath);
-        database = new DonationsDatabase();
+        percentiles = readPercentiles(options.getPercentilePath());
+        statistics = new int[percentiles.length + 2];
+        values = new double[percentiles.length];
+        engines = engineFactory(options, percentiles);
+        database = new DonationsDatabase(engines);
+        metrics = metricsInterval > 0 ? new ProcessingMetrics(database) : null;
     }
 
     /**
-     * Reads the percentile value (assuming 1 <= p <= 100) from the file.
+     * Reads the percentile values (assuming 1 <= p <= 100) from the file. The file contains one percentile,
+     * or several percentiles in ascending order separated by whitespace, commas or line breaks.
      *
      * @param path path to the percentile file
-     * @return percentile value
-     * @throws IOException if value cannot be read from the file
+     * @return percentile values in ascending order
+     * @throws IOException if values cannot be read from the file
      */
-    private static int readPercentile(String path) throws IOException {
-        String line;
+    private static int[] readPercentiles(String path) throws IOException {
+        StringBuilder text = new StringBuilder();
         try (BufferedReader reader = initializeReader(path)) {
-            line = reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                text.append(line).append('\n');
+            }
         }
 
-        int percentile = Integer.parseInt(line);
-        if (percentile < 1 || percentile > 100) {
-            throw new IllegalArgumentException();
+        int[] percentiles = Arrays.stream(text.toString().trim().split("[\\s,]+")).mapToInt(Integer::parseInt).toArray();
+        for (int i = 0; i < percentiles.length; i++) {
+            if (percentiles[i] < 1 || percentiles[i] > 100) {
+                throw new IllegalArgumentException("percentile is invalid: " + percentiles[i]);
+            }
+            if (i > 0 && percentiles[i] <= percentiles[i - 1]) {
+                throw new IllegalArgumentException("percentiles must be in ascending order: " + Arrays.toString(percentiles));
+            }
         }
 
-        return percentile;
+        return percentiles;
+    }
+
+    /**
+     * Returns the factory of the percentile engines: the bounded-memory sketches if the approximate percentiles
+     * are requested, the order-statistic trees if the queries of any percentile are served,
+     * or the exact engines that suit the percentiles otherwise. The exact engines are created only for the buckets
+     * that outgrow the sorted array.
+     *
+     * @param options     optional settings
+     * @param percentiles percentile values
+     * @return factory of percentile engines
+     */
+    private static Supplier<PercentileEngine> engineFactory(Options options, int[] percentiles) {
+        if (options.isApproximate()) {
+            int k = KllSketch.kForRankError(options.getRankError());
+            return () -> new KllSketch(k);
+        }
+        Supplier<PercentileEngine> engines = options.getQueryPort() > 0
+                ? PercentileEngine.treeFactory(options.getBPlusTreeThreshold())
+                : PercentileEngine.factoryFor(options.getBPlusTreeThreshold(), percentiles);
+        return PercentileEngine.smallBucketFactory(options.getArrayThreshold(), engines);
     }
 
     /**
@@ -63,76 +142,243 @@ public class Main {
     }
 
     /**
-     * Helper method that initializes the writer in order to write into the file.
+     * Helper method that initializes the reader in order to read raw lines from the file without decoding them.
      *
      * @param filePath path to the file
-     * @return writer
+     * @param mapped   {@code true} to read the file through the memory mapping
+     * @return reader
      * @throws IOException if file not found
      */
-    private static BufferedWriter initializeWriter(String filePath) throws IOException {
-        return new BufferedWriter(new FileWriter(filePath));
+    private static ByteLineReader initializeByteReader(String filePath, boolean mapped) throws IOException {
+        InputStream in = mapped ? new MappedInputStream(Paths.get(filePath)) : new FileInputStream(filePath);
+        return new ByteLineReader(in);
+    }
+
+    /**
+     * Helper method that initializes the stream in order to read raw lines from the file as it grows.
+     *
+     * @param filePath       path to the file
+     * @param position       position in the file to start reading from
+     * @param intervalMillis interval of polling the file and flushing the output
+     * @param output         output flushed while waiting for more lines
+     * @param stopped        latch that is released to stop following the file
+     * @return stream
+     * @throws IOException if file not found
+     */
+    private static FollowingInputStream initializeFollowingStream(String filePath, long position, long intervalMillis,
+                                                                  Flushable output, CountDownLatch stopped) throws IOException {
+        return new FollowingInputStream(Paths.get(filePath), position, intervalMillis, output, stopped);
+    }
+
+    /**
+     * Helper method that initializes the writer in order to write lines into the file as bytes.
+     *
+     * @param filePath path to the file
+     * @param append   {@code true} to append the lines to the existing file
+     * @return writer
+     * @throws IOException if file cannot be created
+     */
+    private static ByteLineWriter initializeWriter(String filePath, boolean append) throws IOException {
+        return new ByteLineWriter(Paths.get(filePath), append);
     }
 
     /**
      * Reads the input file, processes donation entries and outputs donation statistics into the output file.
+     * If worker threads are requested, the entries are parsed by the {@link IngestionPipeline}, and if shards
+     * are requested, the donations are aggregated by the {@link ShardedAggregator}; both produce exactly the same output.
+     * The database may be restored from the snapshot before the input is processed, and saved into the snapshot after.
+     * If the input file is followed, the method returns only after {@link #stop()} is called; the snapshot then
+     * records the position in the file, and a follower restored from it resumes at that position and appends
+     * to the output file instead of processing the earlier lines again.
+     * If the queries are served, the server runs until the input is processed.
+     * If the metrics are collected, they are published and logged until the input is processed, see {@link MetricsReporter}.
      *
      * @throws IOException if files not found
      */
     public void performDonationAnalysis() throws IOException {
-        // initialize reader and writer
-        try (BufferedReader reader = initializeReader(inputPath);
-             BufferedWriter writer = initializeWriter(outputPath)) {
+        // resume from the state after the previous input files, if requested
+        long position = restorePath != null ? database.loadSnapshot(Paths.get(restorePath)) : 0;
+        boolean resumed = followInterval > 0 && position > 0;
+
+        // answer the queries against the database while the input is processed, if requested
+        QueryServer server = queryPort > 0 ? new QueryServer(database, queryPort) : null;
 
-            String line;
-            while ((line = reader.readLine()) != null) {
+        // publish and log the metrics while the input is processed, if requested
+        MetricsReporter reporter = metrics != null ? new MetricsReporter(metrics, metricsInterval, System.err) : null;
 
-                DonationEntry entry = new DonationEntry(line);      // process new entry from the line
+        // initialize reader and writer
+        try (ByteLineWriter writer = initializeWriter(outputPath, resumed);
+             FollowingInputStream following = followInterval > 0
+                     ? initializeFollowingStream(inputPath, resumed ? position : 0, followInterval, writer, stopped)
+                     : null;
+             ByteLineReader reader = following != null
+                     ? new ByteLineReader(following)
+                     : initializeByteReader(inputPath, mappedInput)) {
 
-                if (!entry.isValid()) {
-                    continue;                   // if entry invalid, skip and read next line
+            if (shards > 0) {
+                try (ShardedAggregator aggregator = new ShardedAggregator(shards, engines, percentiles, writer)) {
+                    processEntries(reader, aggregator);
                 }
+            } else if (metrics != null) {
+                processEntries(reader, entry -> processMeasuredEntry(entry, writer));
+            } else {
+                processEntries(reader, entry -> processEntry(entry, writer));
+            }
+            position = following != null ? following.getPosition() : 0;
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            if (reporter != null) {
+                reporter.close();
+            }
+        }
 
-                // produce output if donor is repeat donor
-                if (database.ifRepeatDonor(entry.getDonorName(), entry.getZipcode(), entry.getDate())) {
-                    database.addDonation(entry);                    // add entry into database that allows to calculate statistics
+        if (snapshotPath != null) {
+            database.saveSnapshot(Paths.get(snapshotPath), position);
+        }
+    }
 
-                    String recipient = entry.getRecipientID();      // 9-digit CMTE_ID
-                    String zipcode = entry.getZipcode();          // 5-digit zip code
-                    String year = entry.getYear();             // 4-digit year
+    /**
+     * Stops following the input file: the lines appended so far are processed, and
+     * {@link #performDonationAnalysis()} returns after the output is written and the snapshot is saved.
+     * Has no effect if the input file is not followed.
+     */
+    public void stop() {
+        stopped.countDown();
+    }
 
-                    // calculate required percentile for given (recipient, zip code, year)
-                    int percentile_value = database.findPercentile(recipient, zipcode, year, percentile);
+    /**
+     * Reads the lines and passes the valid donation entries to the consumer in the input order.
+     *
+     * @param reader   reader of the input lines
+     * @param consumer consumer of the valid entries
+     * @throws IOException if input cannot be read or the consumer fails
+     */
+    private void processEntries(ByteLineReader reader, IngestionPipeline.EntryConsumer consumer) throws IOException {
+        if (threads > 0) {
+            new IngestionPipeline(threads, this::newParser).run(reader, consumer);
+            return;
+        }
 
-                    // calculate cumulative donation for given (recipient, zip code, year)
-                    int cumulative = database.findCumulative(recipient, zipcode, year);
+        DonationEntryParser parser = newParser();
+        while (reader.nextLine()) {
 
-                    // calculate total transaction count for given (recipient, zip code, year)
-                    int transaction_count = database.findTransactionCount(recipient, zipcode, year);
+            // process new entry from the line, only valid entries are created
+            DonationEntry entry = parser.parse(reader.buffer(), reader.lineStart(), reader.lineEnd());
 
+            if (entry == null) {
+                continue;                   // if entry invalid, skip and read next line
+            }
 
-                    // output the statistics separated by '|' character
-                    StringJoiner output_line = new StringJoiner("|");
+            consumer.accept(entry);
+        }
+    }
 
-                    output_line.add(recipient).add(zipcode).add(year)
-                            .add(Integer.toString(percentile_value))
-                            .add(Integer.toString(cumulative))
-                            .add(Integer.toString(transaction_count));
+    /**
+     * Processes the valid donation entry and outputs donation statistics if the donor is repeat donor.
+     *
+     * @param entry  valid donation entry
+     * @param writer writer to the output file
+     * @throws IOException if output cannot be written
+     */
+    private void processEntry(DonationEntry entry, ByteLineWriter writer) throws IOException {
+        // produce output if donor is repeat donor
+        if (database.ifRepeatDonor(entry.getDonorKey(), entry.getZipcodeKey(), entry.getDate())) {
+            // add entry into database that allows to calculate statistics for given (recipient, zip code, year)
+            DonationBucket bucket = database.addDonation(entry);
 
-                    writer.write(output_line.toString());
-                    writer.newLine();
-                }
-            }
+            // calculate required percentiles, cumulative donation and total transaction count
+            bucket.findStatistics(percentiles, values, statistics);
+
+            writeStatistics(writer, entry, statistics);
+        }
+    }
+
+    /**
+     * Processes the valid donation entry like {@link #processEntry(DonationEntry, ByteLineWriter)},
+     * and records the donor and the latencies of the stages into the metrics.
+     *
+     * @param entry  valid donation entry
+     * @param writer writer to the output file
+     * @throws IOException if output cannot be written
+     */
+    private void processMeasuredEntry(DonationEntry entry, ByteLineWriter writer) throws IOException {
+        long start = System.nanoTime();
+        boolean repeat = database.ifRepeatDonor(entry.getDonorKey(), entry.getZipcodeKey(), entry.getDate());
+        long checked = System.nanoTime();
+        metrics.recordDonorCheck(repeat, checked - start);
+
+        if (repeat) {
+            DonationBucket bucket = database.addDonation(entry);
+            long added = System.nanoTime();
+
+            bucket.findStatistics(percentiles, values, statistics);
+            writeStatistics(writer, entry, statistics);
+            metrics.recordDonation(statistics[statistics.length - 1], added - checked, System.nanoTime() - added);
         }
     }
 
+    /**
+     * Returns the new parser of the database, which records every line into the metrics if they are collected.
+     *
+     * @return parser
+     */
+    private DonationEntryParser newParser() {
+        return metrics != null ? database.newParser(metrics.newParserMetrics()) : database.newParser();
+    }
+
+    /**
+     * Outputs the statistics of the bucket of the donation entry as one line: the amounts that correspond
+     * to the percentiles, one column per percentile, followed by the cumulative donation and the transaction count.
+     *
+     * @param writer     writer to the output file
+     * @param entry      donation entry from repeat donor
+     * @param statistics statistics of the bucket, see {@link DonationBucket#findStatistics(int[], double[], int[])}
+     * @throws IOException if output cannot be written
+     */
+    static void writeStatistics(ByteLineWriter writer, DonationEntry entry, int[] statistics) throws IOException {
+        String recipient = entry.getRecipientID();      // 9-digit CMTE_ID
+        String zipcode = entry.getZipcode();          // 5-digit zip code
+        String year = entry.getYear();             // 4-digit year
+
+        // output the statistics separated by '|' character
+        writer.write(recipient);
+        writer.write('|');
+        writer.write(zipcode);
+        writer.write('|');
+        writer.write(year);
+        for (int statistic : statistics) {
+            writer.write('|');
+            writer.writeInt(statistic);
+        }
+        writer.newLine();
+    }
+
     /**
      * {@code main} method that executes the donation analytics code.
      *
-     * @param args {@code path1, path2, path3} - paths to the input file, percentile file, and output file, respectively
+     * @param args {@code path1, path2, path3} - paths to the input file, percentile file, and output file, respectively,
+     *             followed by the optional settings, see {@link Options}
      * @throws Exception if files not found
      */
     public static void main(String[] args) throws Exception {
-        Main solver = new Main(args[0], args[1], args[2]);
+        Options options = Options.parse(args);
+        Main solver = new Main(options);
+
+        // when following the input, the process is terminated by a signal, let the analysis finish cleanly
+        if (options.getFollowInterval() > 0) {
+            Thread mainThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                solver.stop();
+                try {
+                    mainThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
         solver.performDonationAnalysis();
     }
 
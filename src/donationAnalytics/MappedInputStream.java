@@ -0,0 +1,138 @@
+package donationAnalytics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Input stream over the file that is mapped into memory instead of being read by system calls.
+ * Since a single mapping cannot exceed 2 GB, the file is mapped in consecutive windows, and the next window
+ * is mapped when the previous one is exhausted, so files of any size can be read.
+ * The bytes are copied from the mapping in bulk and are never decoded, which makes the stream a suitable source
+ * for {@link ByteLineReader}. The copy into the buffer of the reader is kept deliberately, so the parser works on
+ * {@code byte[]} slices only; splitting the lines in place in the mapping measures no faster, see the README.
+ */
+public class MappedInputStream extends InputStream {
+
+    private static final long DEFAULT_WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final long size;                // size of the file when it was opened
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowEnd;                 // position in the file following the current window
+
+
+    /**
+     * Opens the file with the default window size.
+     *
+     * @param path path to the file
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedInputStream(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Opens the file.
+     *
+     * @param path       path to the file
+     * @param windowSize number of bytes mapped at once, 1 <= size <= {@link Integer#MAX_VALUE}
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedInputStream(Path path, long windowSize) throws IOException {
+        if (windowSize < 1 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("window size is invalid: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return byte, or -1 if the end of file is reached
+     * @throws IOException if the next window cannot be mapped
+     */
+    @Override
+    public int read() throws IOException {
+        if (!ensureRemaining()) {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    /**
+     * Reads up to {@code len} bytes from the current window.
+     *
+     * @param b   buffer
+     * @param off index in the buffer
+     * @param len maximum number of bytes to read
+     * @return number of bytes read, or -1 if the end of file is reached
+     * @throws IOException if the next window cannot be mapped
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureRemaining()) {
+            return -1;
+        }
+
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    /**
+     * Returns the number of bytes remaining in the current window.
+     *
+     * @return number of bytes
+     */
+    @Override
+    public int available() {
+        return window == null ? 0 : window.remaining();
+    }
+
+    /**
+     * Maps the next window if the current one is exhausted.
+     *
+     * @return {@code true} if there are bytes to read, {@code false} if the end of file is reached
+     * @throws IOException if the window cannot be mapped
+     */
+    private boolean ensureRemaining() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        if (windowEnd >= size) {
+            return false;
+        }
+
+        long length = Math.min(windowSize, size - windowEnd);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, length);   // previous window is unmapped by GC
+        windowEnd += length;
+        return true;
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+}
@@ -0,0 +1,106 @@
+package donationAnalytics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Publishes the {@link ProcessingMetrics} through JMX in the platform MBean server, and logs their summary
+ * as one line at the given interval and once more when it is closed. The line starts with the time elapsed
+ * since the reporter was started and the number of lines read per second since the previous line, e.g.
+ * {@code metrics: elapsed=10.0s rate=523412/s lines=5234120 accepted=...}.
+ * <p>
+ * The lines are logged by a daemon thread, which only reads the metrics, so the processing is never blocked.
+ */
+public class MetricsReporter implements Closeable {
+
+    private final ProcessingMetrics metrics;
+    private final PrintStream log;
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final ObjectName name;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Thread thread;
+
+    private final long started = System.nanoTime();
+    private long lastTime = started;        // time and number of lines of the previous line, used by one thread at a time
+    private long lastLines;
+
+
+    /**
+     * Registers the metrics in the platform MBean server and starts logging them.
+     *
+     * @param metrics        metrics to publish
+     * @param intervalMillis interval of logging the metrics in milliseconds
+     * @param log            stream that receives the lines
+     * @throws IOException if the metrics cannot be registered, e.g. if other metrics are registered already
+     */
+    public MetricsReporter(ProcessingMetrics metrics, long intervalMillis, PrintStream log) throws IOException {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("interval is invalid: " + intervalMillis);
+        }
+        this.metrics = metrics;
+        this.log = log;
+        try {
+            name = new ObjectName(ProcessingMetrics.OBJECT_NAME);
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            throw new IOException("cannot register the metrics", e);
+        }
+
+        thread = new Thread(() -> {
+            try {
+                while (!stopped.await(intervalMillis, TimeUnit.MILLISECONDS)) {
+                    report();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "metrics-reporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops logging, logs the final line and unregisters the metrics.
+     *
+     * @throws IOException if the metrics cannot be unregistered
+     */
+    @Override
+    public void close() throws IOException {
+        stopped.countDown();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            throw new IOException("cannot unregister the metrics", e);
+        }
+    }
+
+    /**
+     * Logs the summary of the metrics.
+     */
+    private void report() {
+        long now = System.nanoTime();
+        long lines = metrics.getLinesRead();
+        long rate = now > lastTime ? (lines - lastLines) * TimeUnit.SECONDS.toNanos(1) / (now - lastTime) : 0;
+        lastTime = now;
+        lastLines = lines;
+
+        log.printf(Locale.ROOT, "metrics: elapsed=%.1fs rate=%d/s %s%n", (now - started) / 1e9, rate, metrics.summary());
+    }
+
+}
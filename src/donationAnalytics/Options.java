@@ -0,0 +1,291 @@
+package donationAnalytics;
+
+
+/**
+ * Command-line options of the donation analytics solver.
+ * The three paths are positional and may be followed by the optional settings in the form {@code --name=value}:
+ * <ul>
+ * <li>{@code --approximate=e} - compute percentiles with the bounded-memory sketches
+ * with the normalized rank error {@code e}, e.g. 0.01, instead of the exact engines.</li>
+ * <li>{@code --input=mapped} - read the input file through the memory mapping, see {@link MappedInputStream},
+ * instead of the default {@code --input=stream}.</li>
+ * <li>{@code --threads=n} - parse the input on {@code n} worker threads in parallel with reading it,
+ * see {@link IngestionPipeline}; 0, the default, processes the input on the main thread only.</li>
+ * <li>{@code --shards=k} - aggregate the donations on {@code k} threads, each owning the recipients of one shard,
+ * see {@link ShardedAggregator}; 0, the default, aggregates them on the main thread.</li>
+ * <li>{@code --restore=path} - resume from the state of the database saved in the snapshot file,
+ * see {@link DatabaseSnapshot}.</li>
+ * <li>{@code --snapshot=path} - save the state of the database into the snapshot file after the input is processed.</li>
+ * <li>{@code --follow=ms} - keep following the input file as it grows, flushing the output at least every {@code ms}
+ * milliseconds, until the process is terminated, see {@link FollowingInputStream}.</li>
+ * <li>{@code --query-port=n} - answer the queries of the statistics for any percentile on the local port {@code n}
+ * while the input is processed, see {@link QueryServer}.</li>
+ * <li>{@code --btree-threshold=n} - move the amounts of a bucket from the histogram into the B+-tree
+ * once it holds {@code n} distinct amounts, see {@link AdaptiveOrderedTree}; 0 keeps all buckets in the binary tree.</li>
+ * <li>{@code --array-threshold=n} - keep the exact amounts of a bucket in a sorted array until it holds {@code n} amounts,
+ * see {@link SortedArrayPercentile}; 0 creates the engine for every bucket.</li>
+ * <li>{@code --metrics=ms} - collect the processing metrics, publish them through JMX and log them to the standard
+ * error every {@code ms} milliseconds, see {@link ProcessingMetrics}.</li>
+ * </ul>
+ */
+public class Options {
+
+    private final String inputPath, percentilePath, outputPath;
+    private double rankError;           // 0 if the percentiles are exact
+    private int threads;                // 0 if the input is processed sequentially
+    private int shards;                 // 0 if the donations are aggregated sequentially
+    private boolean mappedInput;
+    private String restorePath, snapshotPath;           // null if not set
+    private long followInterval;        // 0 if the input is read to the end of file
+    private int queryPort;              // 0 if the queries are not served
+    private int bPlusTreeThreshold = AdaptiveOrderedTree.DEFAULT_THRESHOLD;     // 0 if the B+-tree is not used
+    private int arrayThreshold = SortedArrayPercentile.DEFAULT_THRESHOLD;       // 0 if the sorted array is not used
+    private long metricsInterval;       // 0 if the metrics are not collected
+
+
+    /**
+     * Initializes the options with the paths and the default settings.
+     *
+     * @param inputPath      path to the input file
+     * @param percentilePath path to the percentile file
+     * @param outputPath     path to the output file
+     */
+    public Options(String inputPath, String percentilePath, String outputPath) {
+        this.inputPath = inputPath;
+        this.percentilePath = percentilePath;
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Parses the command-line arguments.
+     *
+     * @param args {@code path1, path2, path3} - paths to the input file, percentile file, and output file,
+     *             followed by the optional settings
+     * @return options
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    public static Options parse(String[] args) {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("expected paths to the input file, percentile file, and output file");
+        }
+
+        Options options = new Options(args[0], args[1], args[2]);
+        for (int i = 3; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("option is invalid: " + arg);
+            }
+            options.set(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Sets the value of the optional setting.
+     *
+     * @param name  name of the setting
+     * @param value value of the setting
+     * @throws IllegalArgumentException if the setting is unknown or the value is not valid
+     */
+    private void set(String name, String value) {
+        switch (name) {
+            case "approximate":
+                rankError = Double.parseDouble(value);
+                KllSketch.kForRankError(rankError);         // throws exception if the error is out of range
+                break;
+            case "input":
+                if (!value.equals("mapped") && !value.equals("stream")) {
+                    throw new IllegalArgumentException("input mode is invalid: " + value);
+                }
+                mappedInput = value.equals("mapped");
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                if (threads < 0) {
+                    throw new IllegalArgumentException("number of threads is invalid: " + value);
+                }
+                break;
+            case "shards":
+                shards = Integer.parseInt(value);
+                if (shards < 0) {
+                    throw new IllegalArgumentException("number of shards is invalid: " + value);
+                }
+                break;
+            case "restore":
+                restorePath = value;
+                break;
+            case "snapshot":
+                snapshotPath = value;
+                break;
+            case "follow":
+                followInterval = Long.parseLong(value);
+                if (followInterval < 1) {
+                    throw new IllegalArgumentException("follow interval is invalid: " + value);
+                }
+                break;
+            case "query-port":
+                queryPort = Integer.parseInt(value);
+                if (queryPort < 1 || queryPort > 65535) {
+                    throw new IllegalArgumentException("query port is invalid: " + value);
+                }
+                break;
+            case "btree-threshold":
+                bPlusTreeThreshold = Integer.parseInt(value);
+                if (bPlusTreeThreshold < 0) {
+                    throw new IllegalArgumentException("B+-tree threshold is invalid: " + value);
+                }
+                break;
+            case "array-threshold":
+                arrayThreshold = Integer.parseInt(value);
+                if (arrayThreshold < 0) {
+                    throw new IllegalArgumentException("array threshold is invalid: " + value);
+                }
+                break;
+            case "metrics":
+                metricsInterval = Long.parseLong(value);
+                if (metricsInterval < 1) {
+                    throw new IllegalArgumentException("metrics interval is invalid: " + value);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option: " + name);
+        }
+    }
+
+    /**
+     * Returns path to the input file.
+     *
+     * @return path
+     */
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    /**
+     * Returns path to the percentile file.
+     *
+     * @return path
+     */
+    public String getPercentilePath() {
+        return percentilePath;
+    }
+
+    /**
+     * Returns path to the output file.
+     *
+     * @return path
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Returns {@code true} if the percentiles are computed approximately.
+     *
+     * @return true or false
+     */
+    public boolean isApproximate() {
+        return rankError > 0;
+    }
+
+    /**
+     * Returns the normalized rank error of the approximate percentiles.
+     *
+     * @return rank error, or 0 if the percentiles are exact
+     */
+    public double getRankError() {
+        return rankError;
+    }
+
+    /**
+     * Returns the number of parser worker threads.
+     *
+     * @return number of workers, or 0 if the input is processed sequentially
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the number of shards that aggregate the donations.
+     *
+     * @return number of shards, or 0 if the donations are aggregated sequentially
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns path to the snapshot file to resume from.
+     *
+     * @return path, or null if the processing starts from the empty database
+     */
+    public String getRestorePath() {
+        return restorePath;
+    }
+
+    /**
+     * Returns path to the snapshot file to save the database into.
+     *
+     * @return path, or null if the database is not saved
+     */
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Returns the interval of flushing the output while the input file is followed.
+     *
+     * @return interval in milliseconds, or 0 if the input file is read to the end of file
+     */
+    public long getFollowInterval() {
+        return followInterval;
+    }
+
+    /**
+     * Returns the local port that the queries are served on.
+     *
+     * @return port, or 0 if the queries are not served
+     */
+    public int getQueryPort() {
+        return queryPort;
+    }
+
+    /**
+     * Returns the number of distinct amounts that moves a bucket from the histogram into the B+-tree.
+     *
+     * @return number of amounts, or 0 if the buckets are kept in the binary tree
+     */
+    public int getBPlusTreeThreshold() {
+        return bPlusTreeThreshold;
+    }
+
+    /**
+     * Returns the number of amounts that moves a bucket from the sorted array into the exact percentile engine.
+     *
+     * @return number of amounts, or 0 if every bucket starts with the engine
+     */
+    public int getArrayThreshold() {
+        return arrayThreshold;
+    }
+
+    /**
+     * Returns the interval of logging the processing metrics.
+     *
+     * @return interval in milliseconds, or 0 if the metrics are not collected
+     */
+    public long getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * Returns {@code true} if the input file is read through the memory mapping.
+     *
+     * @return true or false
+     */
+    public boolean isMappedInput() {
+        return mappedInput;
+    }
+
+}
@@ -0,0 +1,78 @@
+package donationAnalytics;
+
+
+/**
+ * Date packed into a single {@code int} in the form yyyymmdd, e.g. 20170131.
+ * Validation is done by calendar arithmetic and accepts exactly the same dates as the non-lenient
+ * {@link java.util.GregorianCalendar} with its default cutover: the Julian leap year rule applies before 1582,
+ * and the days from October 5 to October 14, 1582 do not exist.
+ */
+final class PackedDate {
+
+    // returned instead of the packed date if the date is not valid
+    static final int INVALID = 0;
+
+    private static final int GREGORIAN_CUTOVER_YEAR = 1582;
+    private static final int GREGORIAN_CUTOVER_MONTH = 10;
+    private static final int FIRST_SKIPPED_DAY = 5;
+    private static final int LAST_SKIPPED_DAY = 14;
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+
+    private PackedDate() {
+    }
+
+    /**
+     * Returns the packed date, or {@link #INVALID} if day or month values are out of their appropriate ranges.
+     *
+     * @param yyyy year, from 1 to 9999
+     * @param mm   month, 1-based
+     * @param dd   day of month
+     * @return packed date
+     */
+    static int pack(int yyyy, int mm, int dd) {
+        if (yyyy < 1 || yyyy > 9999 || mm < 1 || mm > 12 || dd < 1) {
+            return INVALID;
+        }
+
+        int days = DAYS_IN_MONTH[mm - 1];
+        if (mm == 2 && isLeapYear(yyyy)) {
+            days++;
+        }
+        if (dd > days) {
+            return INVALID;
+        }
+
+        if (yyyy == GREGORIAN_CUTOVER_YEAR && mm == GREGORIAN_CUTOVER_MONTH
+                && dd >= FIRST_SKIPPED_DAY && dd <= LAST_SKIPPED_DAY) {
+            return INVALID;
+        }
+
+        return (yyyy * 100 + mm) * 100 + dd;
+    }
+
+    /**
+     * Returns the year of the packed date.
+     *
+     * @param date packed date
+     * @return year
+     */
+    static int year(int date) {
+        return date / 10000;
+    }
+
+    /**
+     * Returns {@code true} if the year is a leap year.
+     *
+     * @param yyyy year
+     * @return true or false
+     */
+    static boolean isLeapYear(int yyyy) {
+        if (yyyy < GREGORIAN_CUTOVER_YEAR) {
+            return yyyy % 4 == 0;
+        }
+        return yyyy % 4 == 0 && (yyyy % 100 != 0 || yyyy % 400 == 0);
+    }
+
+}
@@ -0,0 +1,123 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+
+/**
+ * Collection of donation amounts that computes percentiles using the nearest-rank method.
+ */
+public interface PercentileEngine {
+
+    /**
+     * Inserts the amount into the collection.
+     *
+     * @param amount donation amount
+     */
+    void put(double amount);
+
+    /**
+     * Returns the amount that corresponds to the n-th percentile, assuming that the collection is not empty.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return amount corresponding to the percentile
+     */
+    double percentile(int percentile);
+
+    /**
+     * Computes the amounts that correspond to several percentiles, assuming that the collection is not empty.
+     * The engines that store all amounts in order find all of them in one pass instead of one search per percentile.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the amounts corresponding to the percentiles, in the same order
+     */
+    default void percentiles(int[] percentiles, double[] values) {
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = percentile(percentiles[i]);
+        }
+    }
+
+    /**
+     * Returns the number of amounts in the collection.
+     *
+     * @return number of amounts
+     */
+    int size();
+
+    /**
+     * Writes the amounts into the snapshot, see {@link DatabaseSnapshot}.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * Restores the amounts of the empty collection from the snapshot written by the same kind of engine.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot was written by another kind of engine
+     */
+    void readFrom(DataInput in) throws IOException;
+
+    /**
+     * Returns the 1-based rank of the n-th percentile of {@code size} values, computed using the nearest-rank method.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @param size       number of values
+     * @return rank of the percentile
+     */
+    static int nearestRank(int percentile, int size) {
+        return (int) Math.ceil(percentile * (double) size / 100.0);
+    }
+
+    /**
+     * Returns the factory of the engines that suit the given percentiles:
+     * the two-heap tracker if only one percentile is configured, and the order-statistic trees otherwise,
+     * see {@link #treeFactory(int)}.
+     *
+     * @param bPlusTreeThreshold number of distinct amounts that moves a bucket into the B+-tree, or 0 to keep it in the binary tree
+     * @param percentiles        all percentiles that will be computed
+     * @return factory of percentile engines
+     */
+    static Supplier<PercentileEngine> factoryFor(int bPlusTreeThreshold, int... percentiles) {
+        if (percentiles.length == 1) {
+            int percentile = percentiles[0];
+            return () -> new TwoHeapPercentile(percentile);
+        }
+        return treeFactory(bPlusTreeThreshold);
+    }
+
+    /**
+     * Returns the factory of the order-statistic trees, which compute any percentile:
+     * the histograms that move the amounts of the large buckets into the B+-trees, see {@link AdaptiveOrderedTree},
+     * or the binary trees only.
+     *
+     * @param bPlusTreeThreshold number of distinct amounts that moves a bucket into the B+-tree, or 0 to keep it in the binary tree
+     * @return factory of percentile engines
+     */
+    static Supplier<PercentileEngine> treeFactory(int bPlusTreeThreshold) {
+        if (bPlusTreeThreshold > 0) {
+            return () -> new AdaptiveOrderedTree(bPlusTreeThreshold);
+        }
+        return DoubleOrderedTree::new;
+    }
+
+    /**
+     * Returns the factory of the engines that keep the amounts of the small buckets in a sorted array
+     * and move them into the engines of the given factory once they grow large, see {@link SortedArrayPercentile}.
+     *
+     * @param arrayThreshold number of amounts that moves a bucket into the engine, or 0 to start with the engine
+     * @param engines        factory of the engines for the large buckets
+     * @return factory of percentile engines
+     */
+    static Supplier<PercentileEngine> smallBucketFactory(int arrayThreshold, Supplier<PercentileEngine> engines) {
+        if (arrayThreshold > 0) {
+            return () -> new SortedArrayPercentile(arrayThreshold, engines);
+        }
+        return engines;
+    }
+
+}
@@ -0,0 +1,281 @@
+package donationAnalytics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Runtime metrics of the analysis: the counters of the lines by the validation rule that rejected them
+ * and of the new and the repeat donors, the latency histograms of the processing stages, see {@link LatencyHistogram},
+ * and the gauges of the size of the database. The metrics are published through JMX, see {@link ProcessingMetricsMXBean},
+ * and logged periodically by {@link MetricsReporter}.
+ * <p>
+ * Every parser records into its own {@link ParserMetrics}, and the stages that follow the parsing are recorded
+ * by the processing thread, so every counter has a single writer and is updated without locks; the readers sum
+ * the counters of all parsers. The metrics are created only if they are requested, and otherwise the parsers
+ * and the processing loop skip the measurements entirely.
+ */
+public class ProcessingMetrics implements ProcessingMetricsMXBean {
+
+    /**
+     * Name of the metrics in the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "donationAnalytics:type=ProcessingMetrics";
+
+    // names of the validation rules, indexed by the rules of DonationEntry
+    private static final String[] RULES = {"accepted", "fields", "otherId", "recipient", "name", "zipcode", "amount", "date"};
+
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private final DonationsDatabase database;
+    private final List<ParserMetrics> parsers = new CopyOnWriteArrayList<>();
+
+    // recorded by the processing thread
+    private final AtomicLong newDonors = new AtomicLong();
+    private final AtomicLong repeatDonors = new AtomicLong();
+    private final AtomicInteger largestBucket = new AtomicInteger();
+    private final LatencyHistogram donorCheck = new LatencyHistogram();
+    private final LatencyHistogram addDonation = new LatencyHistogram();
+    private final LatencyHistogram output = new LatencyHistogram();
+
+
+    /**
+     * Metrics of one parser: the number of lines by the validation rule that rejected them and the parse latency.
+     * Recorded by the thread of the parser only.
+     */
+    public static final class ParserMetrics {
+
+        private final AtomicLongArray lines = new AtomicLongArray(DonationEntry.NUMBER_OF_RULES);
+        private final LatencyHistogram parse = new LatencyHistogram();
+
+
+        /**
+         * Records the parsed line.
+         *
+         * @param rejection validation rule that rejected the line, see {@link DonationEntry#getRejection()}
+         * @param nanos     parse latency in nanoseconds
+         */
+        public void record(int rejection, long nanos) {
+            lines.lazySet(rejection, lines.get(rejection) + 1);
+            parse.record(nanos);
+        }
+
+    }
+
+
+    /**
+     * Initializes the empty metrics.
+     *
+     * @param database database whose size is reported
+     */
+    public ProcessingMetrics(DonationsDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Returns the metrics of a new parser, see {@link DonationsDatabase#newParser(ParserMetrics)}.
+     *
+     * @return metrics of the parser
+     */
+    public ParserMetrics newParserMetrics() {
+        ParserMetrics metrics = new ParserMetrics();
+        parsers.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * Records the check of the donor of a valid entry. Must be called by the processing thread.
+     *
+     * @param repeat {@code true} if the donor is a repeat donor
+     * @param nanos  latency of the check in nanoseconds
+     */
+    public void recordDonorCheck(boolean repeat, long nanos) {
+        AtomicLong donors = repeat ? repeatDonors : newDonors;
+        donors.lazySet(donors.get() + 1);
+        donorCheck.record(nanos);
+    }
+
+    /**
+     * Records the donation added into the bucket and the output of its statistics.
+     * Must be called by the processing thread.
+     *
+     * @param bucketSize  number of amounts in the bucket after the donation
+     * @param addNanos    latency of adding the donation in nanoseconds
+     * @param outputNanos latency of computing and writing the statistics in nanoseconds
+     */
+    public void recordDonation(int bucketSize, long addNanos, long outputNanos) {
+        if (bucketSize > largestBucket.get()) {
+            largestBucket.lazySet(bucketSize);
+        }
+        addDonation.record(addNanos);
+        output.record(outputNanos);
+    }
+
+    /**
+     * Returns the number of input lines read.
+     *
+     * @return number of lines
+     */
+    @Override
+    public long getLinesRead() {
+        long n = 0;
+        for (int rule = 0; rule < DonationEntry.NUMBER_OF_RULES; rule++) {
+            n += lines(rule);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of input lines that passed the validation.
+     *
+     * @return number of lines
+     */
+    @Override
+    public long getLinesAccepted() {
+        return lines(DonationEntry.VALID);
+    }
+
+    /**
+     * Returns the number of input lines rejected by each validation rule, in the order of the checks.
+     *
+     * @return number of lines by rule
+     */
+    @Override
+    public Map<String, Long> getLinesRejected() {
+        Map<String, Long> rejected = new LinkedHashMap<>();
+        for (int rule = DonationEntry.VALID + 1; rule < DonationEntry.NUMBER_OF_RULES; rule++) {
+            rejected.put(RULES[rule], lines(rule));
+        }
+        return rejected;
+    }
+
+    /**
+     * Returns the number of valid donations from the donors seen for the first time.
+     *
+     * @return number of donations
+     */
+    @Override
+    public long getNewDonors() {
+        return newDonors.get();
+    }
+
+    /**
+     * Returns the number of valid donations from the repeat donors.
+     *
+     * @return number of donations
+     */
+    @Override
+    public long getRepeatDonors() {
+        return repeatDonors.get();
+    }
+
+    /**
+     * Returns the current number of buckets.
+     *
+     * @return number of buckets
+     */
+    @Override
+    public int getBuckets() {
+        return database.getBucketCount();
+    }
+
+    /**
+     * Returns the current number of distinct donors.
+     *
+     * @return number of donors
+     */
+    @Override
+    public int getDonors() {
+        return database.getDonorCount();
+    }
+
+    /**
+     * Returns the largest number of amounts stored in one bucket that has received a donation.
+     *
+     * @return number of amounts
+     */
+    @Override
+    public int getLargestBucket() {
+        return largestBucket.get();
+    }
+
+    /**
+     * Returns the latencies of the processing stages in nanoseconds.
+     *
+     * @return latency by stage and statistic, e.g. {@code parse.p99}
+     */
+    @Override
+    public Map<String, Long> getLatencyNanos() {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        putLatencies(latencies, "parse", parseLatency());
+        putLatencies(latencies, "donorCheck", donorCheck);
+        putLatencies(latencies, "addDonation", addDonation);
+        putLatencies(latencies, "output", output);
+        return latencies;
+    }
+
+    /**
+     * Returns the summary of all metrics as one line, e.g. for the log.
+     *
+     * @return summary
+     */
+    public String summary() {
+        StringBuilder line = new StringBuilder();
+        line.append("lines=").append(getLinesRead())
+                .append(" accepted=").append(getLinesAccepted())
+                .append(" rejected=").append(getLinesRejected())
+                .append(" newDonors=").append(getNewDonors())
+                .append(" repeatDonors=").append(getRepeatDonors())
+                .append(" buckets=").append(getBuckets())
+                .append(" donors=").append(getDonors())
+                .append(" largestBucket=").append(getLargestBucket())
+                .append(" latency(ns,p50/p99/max)");
+        appendLatency(line, "parse", parseLatency());
+        appendLatency(line, "donorCheck", donorCheck);
+        appendLatency(line, "addDonation", addDonation);
+        appendLatency(line, "output", output);
+        return line.toString();
+    }
+
+    // number of lines of the validation rule over all parsers
+    private long lines(int rule) {
+        long n = 0;
+        for (ParserMetrics parser : parsers) {
+            n += parser.lines.get(rule);
+        }
+        return n;
+    }
+
+    // parse latencies of all parsers merged into a new histogram
+    private LatencyHistogram parseLatency() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (ParserMetrics parser : parsers) {
+            merged.add(parser.parse);
+        }
+        return merged;
+    }
+
+    // add the mean, the percentiles and the maximum of the stage
+    private static void putLatencies(Map<String, Long> latencies, String stage, LatencyHistogram histogram) {
+        latencies.put(stage + ".mean", histogram.mean());
+        for (double percentile : PERCENTILES) {
+            String name = percentile == Math.rint(percentile) ? Integer.toString((int) percentile) : Double.toString(percentile);
+            latencies.put(stage + ".p" + name, histogram.percentile(percentile));
+        }
+        latencies.put(stage + ".max", histogram.max());
+    }
+
+    // append the median, the 99th percentile and the maximum of the stage
+    private static void appendLatency(StringBuilder line, String stage, LatencyHistogram histogram) {
+        line.append(' ').append(stage).append('=')
+                .append(histogram.percentile(50)).append('/')
+                .append(histogram.percentile(99)).append('/')
+                .append(histogram.max());
+    }
+
+}
@@ -0,0 +1,76 @@
+package donationAnalytics;
+
+import java.util.Map;
+
+
+/**
+ * Management interface of {@link ProcessingMetrics}, which is published through JMX
+ * under the name {@value ProcessingMetrics#OBJECT_NAME}.
+ */
+public interface ProcessingMetricsMXBean {
+
+    /**
+     * Returns the number of input lines read.
+     *
+     * @return number of lines
+     */
+    long getLinesRead();
+
+    /**
+     * Returns the number of input lines that passed the validation.
+     *
+     * @return number of lines
+     */
+    long getLinesAccepted();
+
+    /**
+     * Returns the number of input lines rejected by each validation rule, e.g. {@code zipcode}.
+     *
+     * @return number of lines by rule
+     */
+    Map<String, Long> getLinesRejected();
+
+    /**
+     * Returns the number of valid donations from the donors seen for the first time.
+     *
+     * @return number of donations
+     */
+    long getNewDonors();
+
+    /**
+     * Returns the number of valid donations from the repeat donors, which produce the output lines.
+     *
+     * @return number of donations
+     */
+    long getRepeatDonors();
+
+    /**
+     * Returns the current number of buckets (recipient, zip code, year).
+     *
+     * @return number of buckets
+     */
+    int getBuckets();
+
+    /**
+     * Returns the current number of distinct donors.
+     *
+     * @return number of donors
+     */
+    int getDonors();
+
+    /**
+     * Returns the largest number of amounts stored in one bucket.
+     *
+     * @return number of amounts
+     */
+    int getLargestBucket();
+
+    /**
+     * Returns the latencies of the processing stages in nanoseconds: the mean, the 50th, 99th and 99.9th percentile
+     * and the maximum of each stage, e.g. {@code parse.p99}.
+     *
+     * @return latency by stage and statistic
+     */
+    Map<String, Long> getLatencyNanos();
+
+}
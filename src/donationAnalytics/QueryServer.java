@@ -0,0 +1,182 @@
+package donationAnalytics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Minimal local HTTP server that answers the queries of the statistics against the live database,
+ * while the input is being processed, see {@link DonationsDatabase#queryStatistics(String, String, String, int)}.
+ * <p>
+ * The server listens on the loopback address only and handles the requests on a single thread.
+ * The request {@code GET /statistics?recipient=C00384516&zipcode=02895&year=2018&percentile=30} is answered
+ * with the line in the format of the output file, e.g. {@code C00384516|02895|2018|333|717|4}, or with the status
+ * 404 if there were no donations from repeat donors for the combination of keys, or 400 if the query is not valid.
+ * The rare query that keeps being overtaken by the insertions into its bucket is answered with the status 503.
+ */
+public class QueryServer implements Closeable {
+
+    private final HttpServer server;
+    private final DonationsDatabase database;
+
+
+    /**
+     * Starts the server.
+     *
+     * @param database database to query
+     * @param port     port on the loopback address
+     * @throws IOException if the server cannot be started
+     */
+    public QueryServer(DonationsDatabase database, int port) throws IOException {
+        this.database = database;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/statistics", this::handle);
+        server.start();
+    }
+
+    /**
+     * Returns the port that the server listens on.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answers the query.
+     *
+     * @param exchange request and response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "only GET is supported");
+                return;
+            }
+
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String recipient = parameters.get("recipient");
+            String zipcode = parameters.get("zipcode");
+            String year = parameters.get("year");
+            int percentile = parsePercentile(parameters.get("percentile"));
+            if (recipient == null || recipient.isEmpty() || !isDigits(zipcode, 5) || !isDigits(year, 4) || percentile < 1) {
+                respond(exchange, 400, "expected recipient, 5-digit zipcode, 4-digit year and percentile 1..100");
+                return;
+            }
+
+            BucketStatistics statistics;
+            try {
+                statistics = database.queryStatistics(recipient, zipcode, year, percentile);
+            } catch (ConcurrentModificationException e) {
+                respond(exchange, 503, "the bucket is being modified, retry later");
+                return;
+            }
+            if (statistics == null) {
+                respond(exchange, 404, "no donations from repeat donors");
+                return;
+            }
+            respond(exchange, 200, recipient + '|' + zipcode + '|' + year + '|' + statistics.getPercentile()
+                    + '|' + statistics.getCumulative() + '|' + statistics.getTransactionCount());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends the response that consists of one line of text.
+     *
+     * @param exchange request and response
+     * @param status   HTTP status code
+     * @param line     text of the response without the line terminator
+     * @throws IOException if the response cannot be sent
+     */
+    private static void respond(HttpExchange exchange, int status, String line) throws IOException {
+        byte[] body = (line + '\n').getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Splits the query string of the URI into the decoded parameters.
+     *
+     * @param query raw query string, may be null
+     * @return parameters by name
+     * @throws IOException if the parameters cannot be decoded
+     */
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                try {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                } catch (IllegalArgumentException e) {
+                    // malformed escape sequence, the parameter is ignored
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Parses the percentile.
+     *
+     * @param value value of the parameter, may be null
+     * @return percentile, or -1 if it is not valid
+     */
+    private static int parsePercentile(String value) {
+        if (!isDigits(value, 1) && !isDigits(value, 2) && !isDigits(value, 3)) {
+            return -1;
+        }
+        int percentile = Integer.parseInt(value);
+        return percentile <= 100 ? percentile : -1;
+    }
+
+    /**
+     * Checks that the string consists of the given number of ASCII digits.
+     *
+     * @param s      string, may be null
+     * @param length expected length
+     * @return {@code true} if the string is valid
+     */
+    private static boolean isDigits(String s, int length) {
+        if (s == null || s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the server, waiting at most one second for the queries in progress.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+    }
+
+}
@@ -4,9 +4,12 @@ package donationAnalytics;
  * This implementation of red black binary search tree can be found
  * at https://algs4.cs.princeton.edu/33balanced/RedBlackBST.java.html.
  * The code is released under the GNU General Public License, version 3 (GPLv3).
+ * It is modified to store the nodes in an int array, to insert top-down without recursion or parent links,
+ * and to delete, select and rank without recursion.
  ***************************/
 
 
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 /**
@@ -25,7 +28,7 @@ import java.util.NoSuchElementException;
  *  value associated with a key to {@code null} is equivalent to deleting the key
  *  from the symbol table.
  *  <p>
- *  This implementation uses a left-leaning red-black BST. It requires that
+ *  This implementation uses a red-black BST. It requires that
  *  the key type implements the {@code Comparable} interface and calls the
  *  {@code compareTo()} and method to compare two keys. It does not call either
  *  {@code equals()} or {@code hashCode()}.
@@ -35,6 +38,16 @@ import java.util.NoSuchElementException;
  *  The <em>size</em>, and <em>is-empty</em> operations take constant time.
  *  Construction takes constant time.
  *  <p>
+ *  The nodes are referred to by index: the links, the subtree count and the color of a node are adjacent ints
+ *  of one array, so a node costs no object header and is read from a single cache line, and the keys and values
+ *  are kept in arrays of their own. The <em>put</em> operation is the top-down insertion: it descends from
+ *  the root in a single pass, counting the new key in the subtrees on its path, and splits every 4-node it meets,
+ *  i.e. a black node with two red children, by a color flip, so the red link passed up is absorbed by at most
+ *  two rotations at the parent, and nothing above it changes. Neither parent links nor a stack of the path
+ *  are kept. Since the red links may lean either way, the deletion is the bottom-up one, which walks back
+ *  up the stack of its path only while the black height is restored. The other operations are plain loops.
+ *  The slots of the deleted nodes are reused by the next insertions.
+ *  <p>
  *  For additional documentation, see <a href="https://algs4.cs.princeton.edu/33balanced">Section 3.3</a> of
  *  <i>Algorithms, 4th Edition</i> by Robert Sedgewick and Kevin Wayne.
  *  For other implementations of the same API, see {@link ST}, {@link BinarySearchST},
@@ -47,47 +60,104 @@ import java.util.NoSuchElementException;
 
 public class RedBlackBST<Key extends Comparable<Key>, Value> {
 
-    private static final boolean RED   = true;
-    private static final boolean BLACK = false;
+    private static final int RED   = 1;
+    private static final int BLACK = 0;
 
-    private Node root;     // root of the BST
+    // node x occupies nodes[STRIDE * x, STRIDE * x + STRIDE)
+    private static final int LEFT   = 0;    // link to left subtree
+    private static final int RIGHT  = 1;    // link to right subtree
+    private static final int SIZE   = 2;    // subtree count
+    private static final int COLOR  = 3;    // color of parent link
+    private static final int STRIDE = 4;
 
-    // BST helper node data type
-    private class Node {
-        private Key key;           // key
-        private Value val;         // associated data
-        private Node left, right;  // links to left and right subtrees
-        private boolean color;     // color of parent link
-        private int size;          // subtree count
+    private static final int NIL = 0;       // node 0 is the sentinel: black, with zero size
+    private static final int ROOT = -1;     // the link to the root, which is kept outside of nodes
+    private static final int DEFAULT_CAPACITY = 16;
 
-        public Node(Key key, Value val, boolean color, int size) {
-            this.key = key;
-            this.val = val;
-            this.color = color;
-            this.size = size;
-        }
-    }
+    // the height of the red-black BST with less than 2^31 nodes does not exceed 2 * 31
+    private static final int MAX_HEIGHT = 62;
+
+    private int[] nodes;
+    private Key[] keys;
+    private Object[] vals;
+
+    private int root = NIL;                 // root of the BST
+    private int allocated;                  // highest index of the allocated nodes
+    private int free = NIL;                 // deleted nodes, linked by their left links
+
+    // links followed by the current deletion, as indexes into nodes
+    private final int[] path = new int[MAX_HEIGHT + 1];
 
     /**
      * Initializes an empty symbol table.
      */
+    @SuppressWarnings("unchecked")
     public RedBlackBST() {
+        nodes = new int[STRIDE * DEFAULT_CAPACITY];
+        keys = (Key[]) new Comparable<?>[DEFAULT_CAPACITY];
+        vals = new Object[DEFAULT_CAPACITY];
     }
 
    /***************************************************************************
     *  Node helper methods.
     ***************************************************************************/
-    // is node x red; false if x is null ?
-    private boolean isRed(Node x) {
-        if (x == null) return false;
-        return x.color == RED;
+    private int left(int x)  { return nodes[LEFT + STRIDE * x]; }
+    private int right(int x) { return nodes[RIGHT + STRIDE * x]; }
+    private int size(int x)  { return nodes[SIZE + STRIDE * x]; }
+
+    private void setLeft(int x, int y)     { nodes[LEFT + STRIDE * x] = y; }
+    private void setRight(int x, int y)    { nodes[RIGHT + STRIDE * x] = y; }
+    private void setColor(int x, int c)    { nodes[COLOR + STRIDE * x] = c; }
+    private void flipColor(int x)          { nodes[COLOR + STRIDE * x] ^= 1; }
+    private void updateSize(int x)         { nodes[SIZE + STRIDE * x] = size(left(x)) + size(right(x)) + 1; }
+
+    // is node x red; false if x is NIL
+    private boolean isRed(int x) {
+        return nodes[COLOR + STRIDE * x] == RED;
     }
 
-    // number of node in subtree rooted at x; 0 if x is null
-    private int size(Node x) {
-        if (x == null) return 0;
-        return x.size;
-    } 
+    // value of node x
+    @SuppressWarnings("unchecked")
+    private Value val(int x) {
+        return (Value) vals[x];
+    }
+
+    // allocate new red leaf, reusing the slot of a deleted node if there is one
+    private int newNode(Key key, Value val) {
+        int x;
+        if (free != NIL) {
+            x = free;
+            free = left(x);
+        } else {
+            if (++allocated == keys.length) {
+                grow();
+            }
+            x = allocated;
+        }
+        keys[x] = key;
+        vals[x] = val;
+        setLeft(x, NIL);
+        setRight(x, NIL);
+        nodes[SIZE + STRIDE * x] = 1;
+        setColor(x, RED);
+        return x;
+    }
+
+    // release the slot of the deleted node
+    private void freeNode(int x) {
+        keys[x] = null;
+        vals[x] = null;
+        setLeft(x, free);
+        free = x;
+    }
+
+    // double the capacity of the node arrays
+    private void grow() {
+        int capacity = keys.length * 2;
+        nodes = Arrays.copyOf(nodes, STRIDE * capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        vals = Arrays.copyOf(vals, capacity);
+    }
 
 
     /**
@@ -103,7 +173,7 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
      * @return {@code true} if this symbol table is empty and {@code false} otherwise
      */
     public boolean isEmpty() {
-        return root == null;
+        return root == NIL;
     }
 
 
@@ -120,16 +190,12 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
      */
     public Value get(Key key) {
         if (key == null) throw new IllegalArgumentException("argument to get() is null");
-        return get(root, key);
-    }
-
-    // value associated with the given key in subtree rooted at x; null if no such key
-    private Value get(Node x, Key key) {
-        while (x != null) {
-            int cmp = key.compareTo(x.key);
-            if      (cmp < 0) x = x.left;
-            else if (cmp > 0) x = x.right;
-            else              return x.val;
+        int x = root;
+        while (x != NIL) {
+            int cmp = key.compareTo(keys[x]);
+            if      (cmp < 0) x = left(x);
+            else if (cmp > 0) x = right(x);
+            else              return val(x);
         }
         return null;
     }
@@ -150,7 +216,7 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
     ***************************************************************************/
 
     /**
-     * Inserts the specified key-value pair into the symbol table, overwriting the old 
+     * Inserts the specified key-value pair into the symbol table, overwriting the old
      * value with the new value if the symbol table already contains the specified key.
      * Deletes the specified key (and its associated value) from this symbol table
      * if the specified value is {@code null}.
@@ -165,28 +231,89 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
             delete(key);
             return;
         }
+        if (root == NIL) {
+            root = newNode(key, val);
+            setColor(root, BLACK);
+            return;
+        }
+
+        int cmp = key.compareTo(keys[root]);
+        if (cmp == 0) {
+            vals[root] = val;
+            return;
+        }
+        if (isRed(left(root)) && isRed(right(root))) {
+            // split the 4-node at the root, which stays black
+            setColor(left(root), BLACK);
+            setColor(right(root), BLACK);
+        }
+        nodes[SIZE + STRIDE * root]++;
+
+        // descend from the root in a single pass, counting the new key in every subtree on the way and splitting
+        // every 4-node met, so a node turned red never has a 4-node above it and every fix-up is local:
+        // only the current node x, its parent p and the links to them are kept
+        int x = root, xLink = ROOT;
+        int p = NIL, pLink = ROOT;
+        while (true) {
+            int cLink = (cmp < 0 ? LEFT : RIGHT) + STRIDE * x;
+            int c = nodes[cLink];
+            int cmpC = 0;
+            if (c == NIL) {
+                c = newNode(key, val);
+                nodes[cLink] = c;
+            } else {
+                cmpC = key.compareTo(keys[c]);
+                if (cmpC == 0) {
+                    vals[c] = val;
+                    uncount(key, c);
+                    return;
+                }
+                if (!isRed(left(c)) || !isRed(right(c))) {
+                    nodes[SIZE + STRIDE * c]++;
+                    p = x;
+                    pLink = xLink;
+                    x = c;
+                    xLink = cLink;
+                    cmp = cmpC;
+                    continue;
+                }
+                flipColors(c);                      // split the 4-node, c turns red
+            }
 
-        root = put(root, key, val);
-        root.color = BLACK;
+            if (isRed(x)) {
+                // two red links in a row below the black p, whose other link is black: p becomes a 4-node;
+                // the sizes taken over by the rotated subtree roots already count the new key
+                if (cLink % STRIDE != xLink % STRIDE) {
+                    x = cLink % STRIDE == LEFT ? rotateRight(x) : rotateLeft(x);
+                    nodes[xLink] = x;
+                    cmp = cmpC;
+                }
+                x = xLink % STRIDE == LEFT ? rotateRight(p) : rotateLeft(p);
+                setLink(pLink, x);
+                xLink = pLink;
+                p = NIL;
+            } else if (cmpC != 0) {
+                nodes[SIZE + STRIDE * c]++;
+                p = x;
+                pLink = xLink;
+                x = c;
+                xLink = cLink;
+                cmp = cmpC;
+            }
+            if (cmpC == 0) break;                   // the new leaf is linked
+        }
+        setColor(root, BLACK);
         // assert check();
     }
 
-    // insert the key-value pair in the subtree rooted at h
-    private Node put(Node h, Key key, Value val) { 
-        if (h == null) return new Node(key, val, RED, 1);
-
-        int cmp = key.compareTo(h.key);
-        if      (cmp < 0) h.left  = put(h.left,  key, val); 
-        else if (cmp > 0) h.right = put(h.right, key, val); 
-        else              h.val   = val;
-
-        // fix-up any right-leaning links
-        if (isRed(h.right) && !isRed(h.left))      h = rotateLeft(h);
-        if (isRed(h.left)  &&  isRed(h.left.left)) h = rotateRight(h);
-        if (isRed(h.left)  &&  isRed(h.right))     flipColors(h);
-        h.size = size(h.left) + size(h.right) + 1;
-
-        return h;
+    // remove the new key from the counts of the subtrees above node c, which holds the key already
+    private void uncount(Key key, int c) {
+        int x = root;
+        while (x != c) {
+            nodes[SIZE + STRIDE * x]--;
+            if (key.compareTo(keys[x]) < 0) x = left(x);
+            else                             x = right(x);
+        }
     }
 
    /***************************************************************************
@@ -199,189 +326,158 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
      */
     public void deleteMin() {
         if (isEmpty()) throw new NoSuchElementException("BST underflow");
-
-        // if both children of root are black, set root to red
-        if (!isRed(root.left) && !isRed(root.right))
-            root.color = RED;
-
-        root = deleteMin(root);
-        if (!isEmpty()) root.color = BLACK;
-        // assert check();
+        delete(keys[min(root)]);
     }
 
-    // delete the key-value pair with the minimum key rooted at h
-    private Node deleteMin(Node h) { 
-        if (h.left == null)
-            return null;
-
-        if (!isRed(h.left) && !isRed(h.left.left))
-            h = moveRedLeft(h);
-
-        h.left = deleteMin(h.left);
-        return balance(h);
-    }
-
-
     /**
      * Removes the largest key and associated value from the symbol table.
      * @throws NoSuchElementException if the symbol table is empty
      */
     public void deleteMax() {
         if (isEmpty()) throw new NoSuchElementException("BST underflow");
-
-        // if both children of root are black, set root to red
-        if (!isRed(root.left) && !isRed(root.right))
-            root.color = RED;
-
-        root = deleteMax(root);
-        if (!isEmpty()) root.color = BLACK;
-        // assert check();
-    }
-
-    // delete the key-value pair with the maximum key rooted at h
-    private Node deleteMax(Node h) { 
-        if (isRed(h.left))
-            h = rotateRight(h);
-
-        if (h.right == null)
-            return null;
-
-        if (!isRed(h.right) && !isRed(h.right.left))
-            h = moveRedRight(h);
-
-        h.right = deleteMax(h.right);
-
-        return balance(h);
+        int x = root;
+        while (right(x) != NIL) x = right(x);
+        delete(keys[x]);
     }
 
     /**
-     * Removes the specified key and its associated value from this symbol table     
-     * (if the key is in this symbol table).    
+     * Removes the specified key and its associated value from this symbol table
+     * (if the key is in this symbol table).
      *
      * @param  key the key
      * @throws IllegalArgumentException if {@code key} is {@code null}
      */
-    public void delete(Key key) { 
+    public void delete(Key key) {
         if (key == null) throw new IllegalArgumentException("argument to delete() is null");
         if (!contains(key)) return;
 
-        // if both children of root are black, set root to red
-        if (!isRed(root.left) && !isRed(root.right))
-            root.color = RED;
+        // descend to the node z, removing the key from the counts of the subtrees on the way,
+        // and remembering the links to the ancestors of the link to z
+        int depth = 0;
+        int link = ROOT;
+        int z = root;
+        while (true) {
+            nodes[SIZE + STRIDE * z]--;
+            int cmp = key.compareTo(keys[z]);
+            if (cmp == 0) break;
+            path[depth++] = link;
+            link = (cmp < 0 ? LEFT : RIGHT) + STRIDE * z;
+            z = nodes[link];
+        }
+
+        // a node with two children takes over the key of its successor, whose node is removed instead
+        if (left(z) != NIL && right(z) != NIL) {
+            int y = right(z);
+            path[depth++] = link;
+            link = RIGHT + STRIDE * z;
+            while (left(y) != NIL) {
+                nodes[SIZE + STRIDE * y]--;
+                path[depth++] = link;
+                link = LEFT + STRIDE * y;
+                y = left(y);
+            }
+            keys[z] = keys[y];
+            vals[z] = vals[y];
+            z = y;
+        }
 
-        root = delete(root, key);
-        if (!isEmpty()) root.color = BLACK;
+        // the only child of z takes its place; the subtree of a black z lacks one black node on its paths
+        int x = left(z) != NIL ? left(z) : right(z);
+        setLink(link, x);
+        boolean black = !isRed(z);
+        freeNode(z);
+        if (black) fixAfterDelete(x, link, depth);
         // assert check();
     }
 
-    // delete the key-value pair with the given key rooted at h
-    private Node delete(Node h, Key key) { 
-        // assert get(h, key) != null;
+    // restore the black height above x, which lacks one black node on its paths, at the given link;
+    // path[0, depth) are the links to the ancestors of the link
+    private void fixAfterDelete(int x, int link, int depth) {
+        while (link != ROOT && !isRed(x)) {
+            int p = link / STRIDE;
+            int pLink = path[--depth];
+            boolean left = link % STRIDE == LEFT;
+            int s = left ? right(p) : left(p);
+
+            if (isRed(s)) {
+                // red sibling: rotate it above the parent, the new sibling of x is black
+                int t = left ? rotateLeft(p) : rotateRight(p);
+                setLink(pLink, t);
+                path[depth++] = pLink;
+                pLink = (left ? LEFT : RIGHT) + STRIDE * t;
+                s = left ? right(p) : left(p);
+            }
 
-        if (key.compareTo(h.key) < 0)  {
-            if (!isRed(h.left) && !isRed(h.left.left))
-                h = moveRedLeft(h);
-            h.left = delete(h.left, key);
-        }
-        else {
-            if (isRed(h.left))
-                h = rotateRight(h);
-            if (key.compareTo(h.key) == 0 && (h.right == null))
-                return null;
-            if (!isRed(h.right) && !isRed(h.right.left))
-                h = moveRedRight(h);
-            if (key.compareTo(h.key) == 0) {
-                Node x = min(h.right);
-                h.key = x.key;
-                h.val = x.val;
-                // h.val = get(h.right, min(h.right).key);
-                // h.key = min(h.right).key;
-                h.right = deleteMin(h.right);
+            if (!isRed(left(s)) && !isRed(right(s))) {
+                // black sibling with black children: recolor it, the parent lacks the black node now
+                setColor(s, RED);
+                x = p;
+                link = pLink;
+                continue;
+            }
+
+            if (left ? !isRed(right(s)) : !isRed(left(s))) {
+                // only the near child of the sibling is red: rotate it above the sibling
+                s = left ? rotateRight(s) : rotateLeft(s);
+                if (left) setRight(p, s);
+                else      setLeft(p, s);
             }
-            else h.right = delete(h.right, key);
+
+            // the far child of the sibling is red: rotate the sibling above the parent, which turns black
+            int t = left ? rotateLeft(p) : rotateRight(p);
+            setLink(pLink, t);
+            setColor(p, BLACK);
+            setColor(left ? right(t) : left(t), BLACK);
+            return;
         }
-        return balance(h);
+        setColor(x, BLACK);
+    }
+
+    // store the link to x in the given link, or in the root if the link is ROOT
+    private void setLink(int link, int x) {
+        if (link == ROOT) root = x;
+        else              nodes[link] = x;
     }
 
    /***************************************************************************
     *  Red-black tree helper functions.
     ***************************************************************************/
 
-    // make a left-leaning link lean to the right
-    private Node rotateRight(Node h) {
-        // assert (h != null) && isRed(h.left);
-        Node x = h.left;
-        h.left = x.right;
-        x.right = h;
-        x.color = x.right.color;
-        x.right.color = RED;
-        x.size = h.size;
-        h.size = size(h.left) + size(h.right) + 1;
+    // rotate the left link of h to the right, h takes the color of the link
+    private int rotateRight(int h) {
+        // assert (h != NIL) && (left(h) != NIL);
+        int x = left(h);
+        setLeft(h, right(x));
+        setRight(x, h);
+        setColor(x, nodes[COLOR + STRIDE * h]);
+        setColor(h, RED);
+        nodes[SIZE + STRIDE * x] = size(h);
+        updateSize(h);
         return x;
     }
 
-    // make a right-leaning link lean to the left
-    private Node rotateLeft(Node h) {
-        // assert (h != null) && isRed(h.right);
-        Node x = h.right;
-        h.right = x.left;
-        x.left = h;
-        x.color = x.left.color;
-        x.left.color = RED;
-        x.size = h.size;
-        h.size = size(h.left) + size(h.right) + 1;
+    // rotate the right link of h to the left, h takes the color of the link
+    private int rotateLeft(int h) {
+        // assert (h != NIL) && (right(h) != NIL);
+        int x = right(h);
+        setRight(h, left(x));
+        setLeft(x, h);
+        setColor(x, nodes[COLOR + STRIDE * h]);
+        setColor(h, RED);
+        nodes[SIZE + STRIDE * x] = size(h);
+        updateSize(h);
         return x;
     }
 
     // flip the colors of a node and its two children
-    private void flipColors(Node h) {
+    private void flipColors(int h) {
         // h must have opposite color of its two children
-        // assert (h != null) && (h.left != null) && (h.right != null);
-        // assert (!isRed(h) &&  isRed(h.left) &&  isRed(h.right))
-        //    || (isRed(h)  && !isRed(h.left) && !isRed(h.right));
-        h.color = !h.color;
-        h.left.color = !h.left.color;
-        h.right.color = !h.right.color;
-    }
-
-    // Assuming that h is red and both h.left and h.left.left
-    // are black, make h.left or one of its children red.
-    private Node moveRedLeft(Node h) {
-        // assert (h != null);
-        // assert isRed(h) && !isRed(h.left) && !isRed(h.left.left);
-
-        flipColors(h);
-        if (isRed(h.right.left)) { 
-            h.right = rotateRight(h.right);
-            h = rotateLeft(h);
-            flipColors(h);
-        }
-        return h;
-    }
-
-    // Assuming that h is red and both h.right and h.right.left
-    // are black, make h.right or one of its children red.
-    private Node moveRedRight(Node h) {
-        // assert (h != null);
-        // assert isRed(h) && !isRed(h.right) && !isRed(h.right.left);
-        flipColors(h);
-        if (isRed(h.left.left)) { 
-            h = rotateRight(h);
-            flipColors(h);
-        }
-        return h;
-    }
-
-    // restore red-black tree invariant
-    private Node balance(Node h) {
-        // assert (h != null);
-
-        if (isRed(h.right))                      h = rotateLeft(h);
-        if (isRed(h.left) && isRed(h.left.left)) h = rotateRight(h);
-        if (isRed(h.left) && isRed(h.right))     flipColors(h);
-
-        h.size = size(h.left) + size(h.right) + 1;
-        return h;
+        // assert (h != NIL) && (left(h) != NIL) && (right(h) != NIL);
+        // assert (!isRed(h) &&  isRed(left(h)) &&  isRed(right(h)))
+        //    || (isRed(h)  && !isRed(left(h)) && !isRed(right(h)));
+        flipColor(h);
+        flipColor(left(h));
+        flipColor(right(h));
     }
 
 
@@ -396,9 +492,9 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
     public int height() {
         return height(root);
     }
-    private int height(Node x) {
-        if (x == null) return -1;
-        return 1 + Math.max(height(x.left), height(x.right));
+    private int height(int x) {
+        if (x == NIL) return -1;
+        return 1 + Math.max(height(left(x)), height(right(x)));
     }
 
    /***************************************************************************
@@ -412,15 +508,15 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
      */
     public Key min() {
         if (isEmpty()) throw new NoSuchElementException("calls min() with empty symbol table");
-        return min(root).key;
-    } 
+        return keys[min(root)];
+    }
 
-    // the smallest key in subtree rooted at x; null if no such key
-    private Node min(Node x) { 
-        // assert x != null;
-        if (x.left == null) return x; 
-        else                return min(x.left); 
-    } 
+    // the smallest key in subtree rooted at x
+    private int min(int x) {
+        // assert x != NIL;
+        while (left(x) != NIL) x = left(x);
+        return x;
+    }
 
     /**
      * Returns the largest key in the symbol table.
@@ -429,15 +525,10 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
      */
     public Key max() {
         if (isEmpty()) throw new NoSuchElementException("calls max() with empty symbol table");
-        return max(root).key;
-    } 
-
-    // the largest key in the subtree rooted at x; null if no such key
-    private Node max(Node x) { 
-        // assert x != null;
-        if (x.right == null) return x; 
-        else                 return max(x.right); 
-    } 
+        int x = root;
+        while (right(x) != NIL) x = right(x);
+        return keys[x];
+    }
 
 
     /**
@@ -450,20 +541,21 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
     public Key floor(Key key) {
         if (key == null) throw new IllegalArgumentException("argument to floor() is null");
         if (isEmpty()) throw new NoSuchElementException("calls floor() with empty symbol table");
-        Node x = floor(root, key);
-        if (x == null) return null;
-        else           return x.key;
-    }    
-
-    // the largest key in the subtree rooted at x less than or equal to the given key
-    private Node floor(Node x, Key key) {
-        if (x == null) return null;
-        int cmp = key.compareTo(x.key);
-        if (cmp == 0) return x;
-        if (cmp < 0)  return floor(x.left, key);
-        Node t = floor(x.right, key);
-        if (t != null) return t; 
-        else           return x;
+
+        // the last node where the search turned right holds the largest smaller key
+        int floor = NIL;
+        int x = root;
+        while (x != NIL) {
+            int cmp = key.compareTo(keys[x]);
+            if (cmp == 0) return keys[x];
+            if (cmp < 0) {
+                x = left(x);
+            } else {
+                floor = x;
+                x = right(x);
+            }
+        }
+        return keys[floor];             // null if there is no such key
     }
 
     /**
@@ -476,20 +568,21 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
     public Key ceiling(Key key) {
         if (key == null) throw new IllegalArgumentException("argument to ceiling() is null");
         if (isEmpty()) throw new NoSuchElementException("calls ceiling() with empty symbol table");
-        Node x = ceiling(root, key);
-        if (x == null) return null;
-        else           return x.key;  
-    }
 
-    // the smallest key in the subtree rooted at x greater than or equal to the given key
-    private Node ceiling(Node x, Key key) {  
-        if (x == null) return null;
-        int cmp = key.compareTo(x.key);
-        if (cmp == 0) return x;
-        if (cmp > 0)  return ceiling(x.right, key);
-        Node t = ceiling(x.left, key);
-        if (t != null) return t; 
-        else           return x;
+        // the last node where the search turned left holds the smallest greater key
+        int ceiling = NIL;
+        int x = root;
+        while (x != NIL) {
+            int cmp = key.compareTo(keys[x]);
+            if (cmp == 0) return keys[x];
+            if (cmp > 0) {
+                x = right(x);
+            } else {
+                ceiling = x;
+                x = left(x);
+            }
+        }
+        return keys[ceiling];           // null if there is no such key
     }
 
     /**
@@ -503,19 +596,20 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
         if (k < 0 || k >= size()) {
             throw new IllegalArgumentException("argument to select() is invalid: " + k);
         }
-        Node x = select(root, k);
-        return x.key;
-    }
 
-    // the key of rank k in the subtree rooted at x
-    private Node select(Node x, int k) {
-        // assert x != null;
-        // assert k >= 0 && k < size(x);
-        int t = size(x.left); 
-        if      (t > k) return select(x.left,  k); 
-        else if (t < k) return select(x.right, k-t-1); 
-        else            return x; 
-    } 
+        // the key of rank k in the subtree rooted at x
+        int x = root;
+        while (true) {
+            int l = left(x);
+            int t = size(l);
+            if      (t > k) x = l;
+            else if (t < k) {
+                k -= t + 1;
+                x = right(x);
+            }
+            else            return keys[x];
+        }
+    }
 
     /**
      * Return the number of keys in the symbol table strictly less than {@code key}.
@@ -525,17 +619,21 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
      */
     public int rank(Key key) {
         if (key == null) throw new IllegalArgumentException("argument to rank() is null");
-        return rank(key, root);
-    } 
-
-    // number of keys less than key in the subtree rooted at x
-    private int rank(Key key, Node x) {
-        if (x == null) return 0; 
-        int cmp = key.compareTo(x.key); 
-        if      (cmp < 0) return rank(key, x.left); 
-        else if (cmp > 0) return 1 + size(x.left) + rank(key, x.right); 
-        else              return size(x.left); 
-    } 
+
+        // the keys less than key in the subtree rooted at x, and the keys to the left of the subtree
+        int rank = 0;
+        int x = root;
+        while (x != NIL) {
+            int cmp = key.compareTo(keys[x]);
+            if      (cmp < 0) x = left(x);
+            else if (cmp > 0) {
+                rank += 1 + size(left(x));
+                x = right(x);
+            }
+            else              return rank + size(left(x));
+        }
+        return rank;
+    }
 
 //   /***************************************************************************
 //    *  Range count and range search.
@@ -575,13 +673,13 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
 //
 //    // add the keys between lo and hi in the subtree rooted at x
 //    // to the queue
-//    private void keys(Node x, Queue<Key> queue, Key lo, Key hi) { 
-//        if (x == null) return; 
-//        int cmplo = lo.compareTo(x.key); 
-//        int cmphi = hi.compareTo(x.key); 
-//        if (cmplo < 0) keys(x.left, queue, lo, hi); 
-//        if (cmplo <= 0 && cmphi >= 0) queue.enqueue(x.key); 
-//        if (cmphi > 0) keys(x.right, queue, lo, hi); 
+//    private void keys(int x, Queue<Key> queue, Key lo, Key hi) { 
+//        if (x == NIL) return; 
+//        int cmplo = lo.compareTo(keys[x]); 
+//        int cmphi = hi.compareTo(keys[x]); 
+//        if (cmplo < 0) keys(left(x), queue, lo, hi); 
+//        if (cmplo <= 0 && cmphi >= 0) queue.enqueue(keys[x]); 
+//        if (cmphi > 0) keys(right(x), queue, lo, hi); 
 //    } 
 //
 //    /**
@@ -611,9 +709,9 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
 //        if (!isBST())            StdOut.println("Not in symmetric order");
 //        if (!isSizeConsistent()) StdOut.println("Subtree counts not consistent");
 //        if (!isRankConsistent()) StdOut.println("Ranks not consistent");
-//        if (!is23())             StdOut.println("Not a 2-3 tree");
+//        if (!isRedBlack())       StdOut.println("Red links in a row");
 //        if (!isBalanced())       StdOut.println("Not balanced");
-//        return isBST() && isSizeConsistent() && isRankConsistent() && is23() && isBalanced();
+//        return isBST() && isSizeConsistent() && isRankConsistent() && isRedBlack() && isBalanced();
 //    }
 //
 //    // does this binary tree satisfy symmetric order?
@@ -625,19 +723,19 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
 //    // is the tree rooted at x a BST with all keys strictly between min and max
 //    // (if min or max is null, treat as empty constraint)
 //    // Credit: Bob Dondero's elegant solution
-//    private boolean isBST(Node x, Key min, Key max) {
-//        if (x == null) return true;
-//        if (min != null && x.key.compareTo(min) <= 0) return false;
-//        if (max != null && x.key.compareTo(max) >= 0) return false;
-//        return isBST(x.left, min, x.key) && isBST(x.right, x.key, max);
+//    private boolean isBST(int x, Key min, Key max) {
+//        if (x == NIL) return true;
+//        if (min != null && keys[x].compareTo(min) <= 0) return false;
+//        if (max != null && keys[x].compareTo(max) >= 0) return false;
+//        return isBST(left(x), min, keys[x]) && isBST(right(x), keys[x], max);
 //    } 
 //
 //    // are the size fields correct?
 //    private boolean isSizeConsistent() { return isSizeConsistent(root); }
-//    private boolean isSizeConsistent(Node x) {
-//        if (x == null) return true;
-//        if (x.size != size(x.left) + size(x.right) + 1) return false;
-//        return isSizeConsistent(x.left) && isSizeConsistent(x.right);
+//    private boolean isSizeConsistent(int x) {
+//        if (x == NIL) return true;
+//        if (size(x) != size(left(x)) + size(right(x)) + 1) return false;
+//        return isSizeConsistent(left(x)) && isSizeConsistent(right(x));
 //    } 
 //
 //    // check that ranks are consistent
@@ -649,33 +747,31 @@ public class RedBlackBST<Key extends Comparable<Key>, Value> {
 //        return true;
 //    }
 //
-//    // Does the tree have no red right links, and at most one (left)
-//    // red links in a row on any path?
-//    private boolean is23() { return is23(root); }
-//    private boolean is23(Node x) {
-//        if (x == null) return true;
-//        if (isRed(x.right)) return false;
-//        if (x != root && isRed(x) && isRed(x.left))
+//    // Is the root black, and is there no path with two red links in a row?
+//    private boolean isRedBlack() { return !isRed(root) && isRedBlack(root); }
+//    private boolean isRedBlack(int x) {
+//        if (x == NIL) return true;
+//        if (isRed(x) && (isRed(left(x)) || isRed(right(x))))
 //            return false;
-//        return is23(x.left) && is23(x.right);
-//    } 
+//        return isRedBlack(left(x)) && isRedBlack(right(x));
+//    }
 //
 //    // do all paths from root to leaf have same number of black edges?
 //    private boolean isBalanced() { 
 //        int black = 0;     // number of black links on path from root to min
-//        Node x = root;
-//        while (x != null) {
+//        int x = root;
+//        while (x != NIL) {
 //            if (!isRed(x)) black++;
-//            x = x.left;
+//            x = left(x);
 //        }
 //        return isBalanced(root, black);
 //    }
 //
 //    // does every path from the root to a leaf have the given number of black links?
-//    private boolean isBalanced(Node x, int black) {
-//        if (x == null) return black == 0;
+//    private boolean isBalanced(int x, int black) {
+//        if (x == NIL) return black == 0;
 //        if (!isRed(x)) black--;
-//        return isBalanced(x.left, black) && isBalanced(x.right, black);
+//        return isBalanced(left(x), black) && isBalanced(right(x), black);
 //    }
 
 }
@@ -0,0 +1,95 @@
+package donationAnalytics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * The items are stored in a ring of power-of-2 size, and the two threads only exchange the positions
+ * of the head and the tail. A thread that finds the ring full or empty spins, then yields, and then parks briefly,
+ * and stops waiting with {@link InterruptedException} if it is interrupted.
+ *
+ * @param <T> type of the items
+ */
+public class RingBuffer<T> {
+
+    private static final int SPINS = 64;
+    private static final int YIELDS = 64;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Object[] slots;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();      // position of the next item to take
+    private final AtomicLong tail = new AtomicLong();      // position of the next item to put
+
+
+    /**
+     * Initializes empty ring buffer.
+     *
+     * @param capacity capacity, rounded up to the power of 2
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Inserts the item, waiting while the ring buffer is full.
+     * Must be called only from the producer thread.
+     *
+     * @param item item, not null
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void put(T item) throws InterruptedException {
+        long t = tail.get();
+        for (int attempt = 0; t - head.get() == slots.length; attempt++) {
+            backOff(attempt);
+        }
+        slots[(int) t & mask] = item;
+        tail.lazySet(t + 1);                // publishes the item to the consumer
+    }
+
+    /**
+     * Removes the oldest item, waiting while the ring buffer is empty.
+     * Must be called only from the consumer thread.
+     *
+     * @return item
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public T take() throws InterruptedException {
+        long h = head.get();
+        for (int attempt = 0; h == tail.get(); attempt++) {
+            backOff(attempt);
+        }
+        int slot = (int) h & mask;
+        T item = (T) slots[slot];
+        slots[slot] = null;
+        head.lazySet(h + 1);                // releases the slot to the producer
+        return item;
+    }
+
+    /**
+     * Waits before the next attempt.
+     *
+     * @param attempt number of the failed attempts
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private static void backOff(int attempt) throws InterruptedException {
+        if (attempt < SPINS) {
+            return;
+        }
+        if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+}
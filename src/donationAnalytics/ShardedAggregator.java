@@ -0,0 +1,238 @@
+package donationAnalytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+
+/**
+ * Aggregates the donations from repeat donors on several threads, each of which owns the buckets of a subset
+ * of recipients, and writes the output lines in the input order.
+ * <p>
+ * The entries are passed to {@link #accept(DonationEntry)} by a single thread in the input order. They must be created
+ * by the parsers of one database, see {@link DonationsDatabase#newParser()}, since all shards use its keys.
+ * Since a donor may donate to recipients of different shards, the repeat donors are identified on that thread
+ * in the global {@link DonorRegistry}. The donations from repeat donors are then sent to the shard selected
+ * by the recipient key, which adds them to its own {@link DonationsDatabase} without any locks, and computes
+ * the statistics of the bucket. The same entries are also sent in the input order to the writer thread,
+ * which takes the statistics of each entry from its shard. The shard handles its entries in the input order,
+ * so its next statistics always belong to the entry that the writer expects, and the output is the same
+ * as the output of the single database.
+ */
+public class ShardedAggregator implements IngestionPipeline.EntryConsumer, Closeable {
+
+    private static final int RING_CAPACITY = 1 << 12;           // power of 2, so the rings hold exactly as many items
+
+    // marks the end of the input in the rings of the entries
+    private static final DonationEntry END = new DonationEntry("", -1, "", -1, "", 0, "", 0, 0, PackedDate.INVALID);
+
+    private final DonorRegistry donors = new DonorRegistry();
+    private final int[] percentiles;
+
+    private final RingBuffer<DonationEntry>[] shardEntries;
+    private final RingBuffer<int[]>[] shardStatistics;      // percentiles, cumulative, transaction count
+    private final RingBuffer<DonationEntry> outputOrder;
+
+    private final Thread[] threads;                         // shards followed by the writer
+    private final Thread producer;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private boolean failureReported;                        // true if the failure was already thrown to the producer
+
+
+    /**
+     * Initializes the shards and starts their threads together with the writer thread.
+     *
+     * @param shards      number of shards, at least 1
+     * @param engines     factory of the percentile engines
+     * @param percentiles percentiles to compute, in ascending order
+     * @param writer      writer of the output lines, used only by the writer thread until the aggregator is closed
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedAggregator(int shards, Supplier<PercentileEngine> engines, int[] percentiles, ByteLineWriter writer) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("number of shards is invalid: " + shards);
+        }
+        this.percentiles = percentiles;
+        producer = Thread.currentThread();
+
+        shardEntries = (RingBuffer<DonationEntry>[]) new RingBuffer<?>[shards];
+        shardStatistics = (RingBuffer<int[]>[]) new RingBuffer<?>[shards];
+        outputOrder = new RingBuffer<>(RING_CAPACITY);
+        threads = new Thread[shards + 1];
+
+        for (int s = 0; s < shards; s++) {
+            RingBuffer<DonationEntry> in = shardEntries[s] = new RingBuffer<>(RING_CAPACITY);
+            RingBuffer<int[]> out = shardStatistics[s] = new RingBuffer<>(RING_CAPACITY);
+            DonationsDatabase database = new DonationsDatabase(engines);
+            threads[s] = new Thread(() -> {
+                try {
+                    aggregate(database, in, out);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }, "donation-shard-" + s);
+        }
+        threads[shards] = new Thread(() -> {
+            try {
+                write(writer);
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }, "donation-writer");
+
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Registers the donor and, if the donor is repeat donor, sends the entry to its shard.
+     *
+     * @param entry valid donation entry
+     * @throws IOException if one of the shards or the writer failed
+     */
+    @Override
+    public void accept(DonationEntry entry) throws IOException {
+        if (!donors.ifRepeatDonor(entry.getDonorKey(), entry.getZipcodeKey(), PackedDate.year(entry.getDate()))) {
+            return;
+        }
+        try {
+            shardEntries[shardOf(entry)].put(entry);
+            outputOrder.put(entry);
+        } catch (InterruptedException e) {
+            throw stopped();
+        }
+    }
+
+    /**
+     * Shard stage: adds the donations to the buckets of the shard and computes their statistics.
+     * The statistics are written into a fixed pool of arrays: the writer takes the statistics of the shard in order
+     * and is done with each array before it takes the next one, so once the ring accepts the array of an entry,
+     * the array used {@code RING_CAPACITY + 2} entries earlier is no longer read and can be overwritten.
+     *
+     * @param database database of the shard
+     * @param in       entries of the shard
+     * @param out      statistics of the entries
+     * @throws InterruptedException if the aggregator is stopped
+     */
+    private void aggregate(DonationsDatabase database, RingBuffer<DonationEntry> in, RingBuffer<int[]> out)
+            throws InterruptedException {
+        int[][] pool = new int[RING_CAPACITY + 2][percentiles.length + 2];
+        double[] values = new double[percentiles.length];
+        int next = 0;
+        for (DonationEntry entry = in.take(); entry != END; entry = in.take()) {
+            DonationBucket bucket = database.addDonation(entry);
+            int[] statistics = pool[next];
+            next = next + 1 == pool.length ? 0 : next + 1;
+            bucket.findStatistics(percentiles, values, statistics);
+            out.put(statistics);
+        }
+    }
+
+    /**
+     * Writer stage: writes the statistics of the entries in the input order.
+     *
+     * @param writer writer of the output lines
+     * @throws IOException          if output cannot be written
+     * @throws InterruptedException if the aggregator is stopped
+     */
+    private void write(ByteLineWriter writer) throws IOException, InterruptedException {
+        for (DonationEntry entry = outputOrder.take(); entry != END; entry = outputOrder.take()) {
+            int[] statistics = shardStatistics[shardOf(entry)].take();
+            Main.writeStatistics(writer, entry, statistics);
+        }
+    }
+
+    /**
+     * Returns the shard of the entry. The recipient keys are dense ids in the order of the first appearance,
+     * so the recipients are dealt to the shards round-robin.
+     *
+     * @param entry donation entry
+     * @return index of the shard
+     */
+    private int shardOf(DonationEntry entry) {
+        return entry.getRecipientKey() % shardEntries.length;
+    }
+
+    /**
+     * Records the first failure and stops all threads.
+     *
+     * @param e failure of the thread
+     */
+    private void fail(Throwable e) {
+        if (!(e instanceof InterruptedException) && failure.compareAndSet(null, e)) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            producer.interrupt();
+        }
+    }
+
+    /**
+     * Returns the exception that reports why the aggregator was stopped.
+     *
+     * @return exception
+     */
+    private IOException stopped() {
+        Throwable e = failure.get();
+        if (e == null) {
+            Thread.currentThread().interrupt();
+            return new InterruptedIOException();
+        }
+        Thread.interrupted();               // clears the interrupt used to stop the producer
+        failureReported = true;
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+
+    /**
+     * Waits until all donations are aggregated and all output lines are written, and stops the threads.
+     * The writer is not closed.
+     *
+     * @throws IOException if one of the shards or the writer failed
+     */
+    @Override
+    public void close() throws IOException {
+        boolean interrupted = false;
+        try {
+            if (failure.get() == null) {
+                for (RingBuffer<DonationEntry> in : shardEntries) {
+                    in.put(END);
+                }
+                outputOrder.put(END);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted || failure.get() != null) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    for (Thread t : threads) {
+                        t.interrupt();
+                    }
+                }
+            }
+        }
+        if (interrupted || failure.get() != null && !failureReported) {
+            throw stopped();
+        }
+    }
+
+}
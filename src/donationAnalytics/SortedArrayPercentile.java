@@ -0,0 +1,236 @@
+package donationAnalytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+
+/**
+ * Exact percentile engine for the small buckets, which are the vast majority: the amounts are kept in one sorted
+ * array, so any percentile is read from the array by index in O(1) time, and the insertion is a binary search
+ * and a short shift. Once the bucket holds the threshold number of amounts, they are moved into the engine
+ * that suits the large buckets, e.g. {@link TwoHeapPercentile} or {@link AdaptiveOrderedTree},
+ * and all later operations are delegated to it.
+ * <p>
+ * An empty or small bucket costs this object and an array of at most the threshold number of amounts,
+ * instead of the object graph of the engine, which is created only for the buckets that grow large.
+ */
+public class SortedArrayPercentile implements PercentileEngine {
+
+    /**
+     * Default number of amounts that moves the bucket into the engine.
+     */
+    public static final int DEFAULT_THRESHOLD = 32;
+
+    private static final int DEFAULT_CAPACITY = 2;
+
+    private final int threshold;
+    private final Supplier<PercentileEngine> engines;
+
+    private double[] amounts;           // sorted amounts, null once they are moved into the engine
+    private int size;
+    private PercentileEngine engine;    // null while the bucket is small
+
+
+    /**
+     * Initializes the empty collection.
+     *
+     * @param threshold number of amounts that moves the bucket into the engine, at least 1
+     * @param engines   factory of the empty engine for the large bucket
+     */
+    public SortedArrayPercentile(int threshold, Supplier<PercentileEngine> engines) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold is invalid: " + threshold);
+        }
+        this.threshold = threshold;
+        this.engines = engines;
+        amounts = new double[Math.min(DEFAULT_CAPACITY, threshold)];
+    }
+
+    /**
+     * Inserts the amount after the equal ones, moving the amounts into the engine if the array is full.
+     *
+     * @param amount donation amount
+     */
+    @Override
+    public void put(double amount) {
+        if (engine == null && size == threshold) {
+            moveToEngine();
+        }
+        if (engine != null) {
+            engine.put(amount);
+            return;
+        }
+
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (amounts[mid] <= amount) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        if (size == amounts.length) {
+            amounts = Arrays.copyOf(amounts, Math.min(size * 2, threshold));
+        }
+        System.arraycopy(amounts, lo, amounts, lo + 1, size - lo);
+        amounts[lo] = amount;
+        size++;
+    }
+
+    /**
+     * Returns the amount that corresponds to the n-th percentile, computed using the nearest-rank method.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     * @return amount corresponding to the percentile
+     */
+    @Override
+    public double percentile(int percentile) {
+        // every field is read once and the size is checked against the array, since a concurrent insertion
+        // may replace the array or move the amounts into the engine, see DonationBucket#readStatistics
+        PercentileEngine engine = this.engine;
+        if (engine != null) {
+            return engine.percentile(percentile);
+        }
+        double[] amounts = this.amounts;
+        int size = this.size;
+        if (amounts == null || size > amounts.length) {
+            throw new IllegalStateException("amounts are modified concurrently");
+        }
+        return amounts[PercentileEngine.nearestRank(percentile, size) - 1];
+    }
+
+    /**
+     * Computes the amounts that correspond to several percentiles.
+     *
+     * @param percentiles percentiles in ascending order, 1 <= p <= 100
+     * @param values      array that receives the amounts corresponding to the percentiles, in the same order
+     */
+    @Override
+    public void percentiles(int[] percentiles, double[] values) {
+        if (engine != null) {
+            engine.percentiles(percentiles, values);
+            return;
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = amounts[PercentileEngine.nearestRank(percentiles[i], size) - 1];
+        }
+    }
+
+    /**
+     * Returns the number of amounts in the collection.
+     *
+     * @return number of amounts
+     */
+    @Override
+    public int size() {
+        return engine != null ? engine.size() : size;
+    }
+
+    /**
+     * Writes the amounts into the snapshot, in the same format as {@link DoubleOrderedTree}
+     * regardless of where they are stored.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        if (engine != null) {
+            engine.writeTo(out);
+            return;
+        }
+
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || amounts[i] != amounts[i - 1]) {
+                distinct++;
+            }
+        }
+
+        out.writeByte(DatabaseSnapshot.EXACT_AMOUNTS);
+        out.writeInt(distinct);
+        for (int i = 0; i < size; ) {
+            int j = i;
+            while (j < size && amounts[j] == amounts[i]) {
+                j++;
+            }
+            out.writeDouble(amounts[i]);
+            out.writeInt(j - i);
+            i = j;
+        }
+    }
+
+    /**
+     * Restores the amounts of the empty collection from the snapshot. If there are at least the threshold number
+     * of them, the distinct amounts and their counts are handed over to the engine, which restores them
+     * in its own way, e.g. in linear time.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        if (size() > 0) {
+            throw new IllegalStateException("collection is not empty");
+        }
+        DatabaseSnapshot.readTag(in, DatabaseSnapshot.EXACT_AMOUNTS);
+
+        int distinct = DatabaseSnapshot.readCount(in);
+        double[] keys = new double[distinct];
+        int[] counts = new int[distinct];
+        long n = 0;
+        for (int i = 0; i < distinct; i++) {
+            keys[i] = in.readDouble();
+            counts[i] = in.readInt();
+            if (counts[i] < 1 || i > 0 && !(keys[i] > keys[i - 1])) {
+                throw new StreamCorruptedException("snapshot is corrupted: amounts are not ascending");
+            }
+            n += counts[i];
+        }
+
+        if (n < threshold) {
+            amounts = new double[Math.max((int) n, amounts.length)];
+            for (int i = 0; i < distinct; i++) {
+                Arrays.fill(amounts, size, size + counts[i], keys[i]);
+                size += counts[i];
+            }
+            return;
+        }
+
+        // the same state in the same format, which the engine reads as if it was written by itself
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + 12 * distinct);
+        DataOutputStream state = new DataOutputStream(bytes);
+        state.writeByte(DatabaseSnapshot.EXACT_AMOUNTS);
+        state.writeInt(distinct);
+        for (int i = 0; i < distinct; i++) {
+            state.writeDouble(keys[i]);
+            state.writeInt(counts[i]);
+        }
+        PercentileEngine large = engines.get();
+        large.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        amounts = null;
+        engine = large;
+    }
+
+    // move the amounts of the full array into the new engine
+    private void moveToEngine() {
+        PercentileEngine large = engines.get();
+        for (int i = 0; i < size; i++) {
+            large.put(amounts[i]);
+        }
+        amounts = null;
+        engine = large;
+    }
+
+}
@@ -0,0 +1,242 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Dictionary that assigns dense int ids 0, 1, 2, ... to distinct strings in the order of their first appearance,
+ * so that the strings can be stored and compared as ints, and each distinct string is kept in memory once.
+ * <p>
+ * The strings are looked up directly in the raw bytes of the input, without creating a String unless the string
+ * is new. The ASCII bytes are hashed the same way as {@link String#hashCode()}, so the same string has the same id
+ * whether it is looked up as bytes or as a String. The dictionary is an open-addressing hash table with linear
+ * probing. It is safe to use from several threads: the lookups of the known strings do not lock,
+ * and only the insertion of a new string is synchronized.
+ */
+public class StringDictionary {
+
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    // the same charset is used by the parser to decode the non-ASCII fields
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Entry[].class);
+
+    /**
+     * Distinct string with its id.
+     */
+    private static final class Entry {
+        final String string;
+        final int hash;
+        final int id;
+
+        Entry(String string, int hash, int id) {
+            this.string = string;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+
+    // the table is replaced when it is filled by more than 1/2, the readers see either the old or the new one
+    private volatile Entry[] table = new Entry[DEFAULT_CAPACITY];
+    private volatile String[] strings = new String[DEFAULT_CAPACITY];     // strings by id
+    private int size;                                                     // guarded by this
+
+
+    /**
+     * Returns the id of the string stored in {@code buf[from, to)}, adding the string if it is new.
+     * Non-ASCII bytes are decoded with the default charset.
+     *
+     * @param buf  buffer with the string
+     * @param from index of the first byte of the string
+     * @param to   index following the last byte of the string
+     * @return id of the string
+     */
+    public int idOf(byte[] buf, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            if (buf[i] < 0) {
+                return idOf(new String(buf, from, to - from, CHARSET));
+            }
+            h = 31 * h + buf[i];
+        }
+
+        Entry[] t = table;
+        int mask = t.length - 1;
+        for (int i = mix(h) & mask; ; i = (i + 1) & mask) {
+            Entry e = (Entry) SLOTS.getAcquire(t, i);
+            if (e == null) {
+                break;
+            }
+            if (e.hash == h && equals(e.string, buf, from, to)) {
+                return e.id;
+            }
+        }
+        return add(new String(buf, from, to - from, StandardCharsets.US_ASCII), h);
+    }
+
+    /**
+     * Returns the id of the string, adding the string if it is new.
+     *
+     * @param s string
+     * @return id of the string
+     */
+    public int idOf(String s) {
+        int id = find(s);
+        return id >= 0 ? id : add(s, s.hashCode());
+    }
+
+    /**
+     * Returns the id of the string without adding it.
+     *
+     * @param s string
+     * @return id of the string, or -1 if the dictionary does not contain it
+     */
+    public int find(String s) {
+        int h = s.hashCode();
+        Entry[] t = table;
+        int mask = t.length - 1;
+        for (int i = mix(h) & mask; ; i = (i + 1) & mask) {
+            Entry e = (Entry) SLOTS.getAcquire(t, i);
+            if (e == null) {
+                return -1;
+            }
+            if (e.hash == h && e.string.equals(s)) {
+                return e.id;
+            }
+        }
+    }
+
+    /**
+     * Returns the string with the given id.
+     *
+     * @param id id returned by the dictionary
+     * @return string
+     */
+    public String string(int id) {
+        return strings[id];
+    }
+
+    /**
+     * Returns the number of distinct strings.
+     *
+     * @return number of strings
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Writes all strings in the order of their ids into the snapshot.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            DatabaseSnapshot.writeString(out, strings[id]);
+        }
+    }
+
+    /**
+     * Restores the strings of the empty dictionary from the snapshot, so that they get the same ids.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    synchronized void readFrom(DataInput in) throws IOException {
+        if (size > 0) {
+            throw new IllegalStateException("dictionary is not empty");
+        }
+        for (int n = DatabaseSnapshot.readCount(in); n > 0; n--) {
+            String s = DatabaseSnapshot.readString(in);
+            if (idOf(s) != size - 1) {
+                throw new StreamCorruptedException("snapshot is corrupted: duplicate string " + s);
+            }
+        }
+    }
+
+    /**
+     * Adds the string unless another thread has added it in the meantime.
+     *
+     * @param s string
+     * @param h hash of the string
+     * @return id of the string
+     */
+    private synchronized int add(String s, int h) {
+        Entry[] t = table;
+        int mask = t.length - 1;
+        int i = mix(h) & mask;
+        for (Entry e = t[i]; e != null; e = t[i]) {
+            if (e.hash == h && e.string.equals(s)) {
+                return e.id;
+            }
+            i = (i + 1) & mask;
+        }
+
+        int id = size;
+        if (id == strings.length) {
+            strings = Arrays.copyOf(strings, id * 2);
+        }
+        strings[id] = s;
+        SLOTS.setRelease(t, i, new Entry(s, h, id));       // the string is visible before its id
+
+        if (++size * 2 > t.length) {
+            Entry[] larger = new Entry[t.length * 2];
+            int largerMask = larger.length - 1;
+            for (Entry e : t) {
+                if (e != null) {
+                    int j = mix(e.hash) & largerMask;
+                    while (larger[j] != null) {
+                        j = (j + 1) & largerMask;
+                    }
+                    larger[j] = e;
+                }
+            }
+            table = larger;
+        }
+        return id;
+    }
+
+    /**
+     * Returns {@code true} if the string consists of the given ASCII bytes.
+     *
+     * @param s    string
+     * @param buf  buffer with the bytes
+     * @param from index of the first byte
+     * @param to   index following the last byte
+     * @return true or false
+     */
+    private static boolean equals(String s, byte[] buf, int from, int to) {
+        if (s.length() != to - from) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i - from) != buf[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the well-mixed hash, so that linear probing does not form long clusters.
+     *
+     * @param h hash of the string
+     * @return mixed hash
+     */
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
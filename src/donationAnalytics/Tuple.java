@@ -68,4 +68,12 @@ public class Tuple<Key1 extends Comparable<Key1>, Key2 extends Comparable<Key2>>
 
         return Objects.equals(this.key1, that.key1) && Objects.equals(this.key2, that.key2);
     }
+
+    /**
+     * Overrides Object's {@code hashCode} method consistently with {@code equals}.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(key1, key2);
+    }
 }
@@ -0,0 +1,230 @@
+package donationAnalytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+
+/**
+ * Streaming tracker of a single fixed percentile.
+ * The amounts are split between two heaps: the max-heap holds the amounts up to the nearest rank of the percentile,
+ * and the min-heap holds the amounts above it. The heaps are rebalanced on every insertion,
+ * so that the percentile is always the top of the max-heap.
+ * Insertion takes O(log(N)) time and moves at most one amount between the heaps,
+ * and the percentile is read in O(1) time.
+ */
+public class TwoHeapPercentile implements PercentileEngine {
+
+    private final int percentile;
+
+    // the max-heap is stored as the min-heap of negated amounts
+    private final DoubleMinHeap lower = new DoubleMinHeap();
+    private final DoubleMinHeap upper = new DoubleMinHeap();
+
+
+    /**
+     * Initializes the tracker of the given percentile.
+     *
+     * @param percentile percentile, 1 <= p <= 100
+     */
+    public TwoHeapPercentile(int percentile) {
+        if (percentile < 1 || percentile > 100) {
+            throw new IllegalArgumentException("percentile is invalid: " + percentile);
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * Inserts the amount and moves the boundary between the heaps to the new nearest rank.
+     *
+     * @param amount donation amount
+     */
+    @Override
+    public void put(double amount) {
+        if (lower.size() > 0 && amount <= -lower.peek()) {
+            lower.push(-amount);
+        } else {
+            upper.push(amount);
+        }
+
+        int rank = PercentileEngine.nearestRank(percentile, size());
+        if (lower.size() > rank) {
+            upper.push(-lower.pop());
+        } else if (lower.size() < rank) {
+            lower.push(-upper.pop());
+        }
+    }
+
+    /**
+     * Returns the amount that corresponds to the tracked percentile.
+     *
+     * @param percentile percentile, must be equal to the tracked one
+     * @return amount corresponding to the percentile
+     * @throws IllegalArgumentException if the percentile is not the tracked one
+     */
+    @Override
+    public double percentile(int percentile) {
+        if (percentile != this.percentile) {
+            throw new IllegalArgumentException("only the " + this.percentile + "-th percentile is tracked: " + percentile);
+        }
+        return -lower.peek();
+    }
+
+    /**
+     * Returns the number of amounts in both heaps.
+     *
+     * @return number of amounts
+     */
+    @Override
+    public int size() {
+        return lower.size() + upper.size();
+    }
+
+    /**
+     * Writes the distinct amounts of both heaps in ascending order together with their counts into the snapshot,
+     * in the same format as {@link DoubleOrderedTree}.
+     *
+     * @param out snapshot output
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        double[] amounts = new double[size()];
+        for (int i = 0; i < lower.size; i++) {
+            amounts[i] = -lower.heap[i];
+        }
+        System.arraycopy(upper.heap, 0, amounts, lower.size, upper.size);
+        Arrays.sort(amounts);
+
+        int distinct = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            if (i == 0 || amounts[i] != amounts[i - 1]) {
+                distinct++;
+            }
+        }
+
+        out.writeByte(DatabaseSnapshot.EXACT_AMOUNTS);
+        out.writeInt(distinct);
+        for (int i = 0; i < amounts.length; ) {
+            int j = i;
+            while (j < amounts.length && amounts[j] == amounts[i]) {
+                j++;
+            }
+            out.writeDouble(amounts[i]);
+            out.writeInt(j - i);
+            i = j;
+        }
+    }
+
+    /**
+     * Restores the empty heaps from the distinct amounts in ascending order and their counts.
+     * Since a sorted array is a valid heap, the heaps are filled in linear time.
+     *
+     * @param in snapshot input
+     * @throws IOException if an I/O error occurs or the snapshot is not valid
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        if (size() > 0) {
+            throw new IllegalStateException("tracker is not empty");
+        }
+        DatabaseSnapshot.readTag(in, DatabaseSnapshot.EXACT_AMOUNTS);
+
+        int distinct = DatabaseSnapshot.readCount(in);
+        double[] amounts = new double[distinct];
+        int n = 0;
+        for (int i = 0; i < distinct; i++) {
+            double amount = in.readDouble();
+            int count = in.readInt();
+            if (count < 1 || i > 0 && !(amount > amounts[n - 1])) {
+                throw new StreamCorruptedException("snapshot is corrupted: amounts are not ascending");
+            }
+            if (n + count > amounts.length) {
+                amounts = Arrays.copyOf(amounts, Math.max(n + count, amounts.length * 2));
+            }
+            Arrays.fill(amounts, n, n + count, amount);
+            n += count;
+        }
+
+        // the lower heap holds the negated amounts up to the nearest rank, which are ascending in reverse order
+        int rank = n == 0 ? 0 : PercentileEngine.nearestRank(percentile, n);
+        double[] negated = new double[rank];
+        for (int i = 0; i < rank; i++) {
+            negated[i] = -amounts[rank - 1 - i];
+        }
+        lower.fill(negated, rank);
+        upper.fill(Arrays.copyOfRange(amounts, rank, n), n - rank);
+    }
+
+
+    /**
+     * Binary min-heap of primitive doubles stored in a growing array.
+     */
+    private static class DoubleMinHeap {
+
+        private static final int DEFAULT_CAPACITY = 8;
+
+        private double[] heap = new double[DEFAULT_CAPACITY];
+        private int size;
+
+
+        int size() {
+            return size;
+        }
+
+        // replace the contents of the heap with the values, which must form a valid heap, e.g. be sorted
+        void fill(double[] values, int n) {
+            heap = values.length < DEFAULT_CAPACITY ? Arrays.copyOf(values, DEFAULT_CAPACITY) : values;
+            size = n;
+        }
+
+        double peek() {
+            return heap[0];
+        }
+
+        void push(double value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+
+            // sift up
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        double pop() {
+            double top = heap[0];
+            double value = heap[--size];
+
+            // sift down
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (value <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (size > 0) {
+                heap[i] = value;
+            }
+            return top;
+        }
+    }
+
+}